@@ -0,0 +1,34 @@
+package apps;
+
+/**
+ * Storage for the values of an array symbol, used in place of a plain int array when the
+ * array is mostly empty or too big for the heap. Elements that were never set are zero.
+ * 
+ * @author ru-nb-cs112
+ *
+ */
+public interface ArrayStorage {
+
+	/**
+	 * Returns the value at an index.
+	 * 
+	 * @param index Index, between 0 and length()-1
+	 * @return Value at the index
+	 */
+	int get(int index);
+	
+	/**
+	 * Sets the value at an index.
+	 * 
+	 * @param index Index, between 0 and length()-1
+	 * @param value New value
+	 */
+	void set(int index, int value);
+	
+	/**
+	 * Returns the declared length of the array.
+	 * 
+	 * @return Length
+	 */
+	int length();
+}
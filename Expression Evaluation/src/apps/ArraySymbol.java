@@ -20,29 +20,63 @@ public class ArraySymbol {
 	public int[] values;
 	
 	/**
-	 * Initializes this symbol with given name, and sets values to null.
+	 * Sparse or file-backed values, used instead of the values array when that is null
+	 */
+	public ArrayStorage storage;
+	
+	/**
+	 * Initializes this symbol with given name, and sets values and storage to null.
 	 * 
 	 * @param name Name of array
 	 */
 	public ArraySymbol(String name) {
         this.name = name;
         values = null;
+        storage = null;
     }
 	
+	/**
+	 * Returns the value at an index, from the values array if there is one, or else
+	 * from the storage.
+	 * 
+	 * @param index Index
+	 * @return Value at the index
+	 */
+	public int get(int index) {
+		int[] v = values;
+		if (v != null) {
+			return v[index];
+		}
+		return storage.get(index);
+	}
+	
+	/**
+	 * Returns the length of the array, or 0 if it has no values.
+	 * 
+	 * @return Length
+	 */
+	public int length() {
+		if (values != null) {
+			return values.length;
+		}
+		return storage == null ? 0 : storage.length();
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		if (values == null || values.length == 0) {
+		int length = length();
+		if (length == 0) {
 			return name + "=[ ]";
 		}
 		StringBuilder sb = new StringBuilder();
 		sb.append(name);
 		sb.append("=[");
-		sb.append(values[0]);
-		for (int i=1; i < values.length; i++) {
+		sb.append(get(0));
+		for (int i=1; i < length; i++) {
 			sb.append(',');
-			sb.append(values[i]);
+			sb.append(get(i));
 		}
 		sb.append(']');
 		return sb.toString();
@@ -0,0 +1,189 @@
+package apps;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates one compiled expression over many rows of scalar values at once. Scalar
+ * values are given column by column, one int array per scalar slot, and array values
+ * come from the symbol table. Rows are processed in blocks: each instruction runs over
+ * the whole block in one loop on primitive arrays before the next instruction starts,
+ * so the inner loops are simple enough for the JIT compiler to vectorize.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class BatchEvaluator {
+
+	/**
+	 * Number of rows evaluated together in one block
+	 */
+	static final int BLOCK = 256;
+
+	/**
+	 * Minimum number of rows handed to one task by evaluateParallel
+	 */
+	static final int TASK_ROWS = 16*BLOCK;
+
+	/**
+	 * Expression to be evaluated
+	 */
+	CompiledExpression code;
+
+	/**
+	 * Initializes a batch evaluator for a compiled expression.
+	 *
+	 * @param code Compiled expression
+	 */
+	public BatchEvaluator(CompiledExpression code) {
+		this.code = code;
+	}
+
+	/**
+	 * Evaluates the expression once per row, on the calling thread.
+	 *
+	 * @param symbols Symbol table the expression was compiled against; supplies the array
+	 *        values, and the value of any scalar that has no column
+	 * @param columns Values of each scalar, indexed by slot then by row. A null column
+	 *        means the scalar has the same value, taken from the symbol table, in every row.
+	 * @param result Array (created by the caller) that receives the value of each row; its
+	 *        length is the number of rows
+	 */
+	public void evaluate(SymbolTable symbols, int[][] columns, float[] result) {
+		evaluateRows(symbols, columns, result, 0, result.length, new float[code.size][BLOCK]);
+	}
+
+	/**
+	 * Evaluates the expression once per row, splitting the rows over the threads of the
+	 * common fork-join pool. The symbol table must not change while this runs.
+	 *
+	 * @param symbols Symbol table the expression was compiled against
+	 * @param columns Values of each scalar, indexed by slot then by row
+	 * @param result Array (created by the caller) that receives the value of each row
+	 */
+	public void evaluateParallel(SymbolTable symbols, int[][] columns, float[] result) {
+		ForkJoinPool.commonPool().invoke(new RowTask(symbols, columns, result, 0, result.length));
+	}
+
+	/**
+	 * Evaluates rows from (inclusive) to to (exclusive), one block at a time.
+	 *
+	 * @param symbols Symbol table
+	 * @param columns Scalar columns
+	 * @param result Row values
+	 * @param from First row
+	 * @param to One past the last row
+	 * @param reg Scratch space, one block of values per instruction
+	 */
+	void evaluateRows(SymbolTable symbols, int[][] columns, float[] result,
+			int from, int to, float[][] reg) {
+		int[] op = code.op, a = code.a, b = code.b;
+		float[] single = code.single;
+		int size = code.size;
+		for (int start=from; start < to; start += BLOCK) {
+			int n = Math.min(BLOCK, to-start);
+			for (int i=0; i < size; i++) {
+				float[] r = reg[i];
+				switch (op[i]) {
+				case CompiledExpression.CONST: {
+					float c = single[i];
+					for (int k=0; k < n; k++) r[k] = c;
+					break;
+				}
+				case CompiledExpression.SCALAR: {
+					int[] col = columns[a[i]];
+					if (col == null) {
+						float c = symbols.scalars.get(a[i]).value;
+						for (int k=0; k < n; k++) r[k] = c;
+					} else {
+						for (int k=0; k < n; k++) r[k] = col[start+k];
+					}
+					break;
+				}
+				case CompiledExpression.ARRAY: {
+					ArraySymbol as = symbols.arrays.get(a[i]);
+					int[] values = as.values;
+					float[] x = reg[b[i]];
+					if (values != null) {
+						for (int k=0; k < n; k++) r[k] = values[(int)x[k]];
+					} else {
+						ArrayStorage storage = as.storage;
+						for (int k=0; k < n; k++) r[k] = storage.get((int)x[k]);
+					}
+					break;
+				}
+				case CompiledExpression.ADD: {
+					float[] x = reg[a[i]], y = reg[b[i]];
+					for (int k=0; k < n; k++) r[k] = x[k] + y[k];
+					break;
+				}
+				case CompiledExpression.SUB: {
+					float[] x = reg[a[i]], y = reg[b[i]];
+					for (int k=0; k < n; k++) r[k] = x[k] - y[k];
+					break;
+				}
+				case CompiledExpression.MUL: {
+					float[] x = reg[a[i]], y = reg[b[i]];
+					for (int k=0; k < n; k++) r[k] = x[k] * y[k];
+					break;
+				}
+				case CompiledExpression.DIV: {
+					float[] x = reg[a[i]], y = reg[b[i]];
+					for (int k=0; k < n; k++) r[k] = x[k] / y[k];
+					break;
+				}
+				case CompiledExpression.NEG: {
+					float[] x = reg[a[i]];
+					for (int k=0; k < n; k++) r[k] = -x[k];
+					break;
+				}
+				case CompiledExpression.RANGE:
+					break;
+				default: {
+					// an aggregate; the arrays are the same for every row, only the range varies
+					int rg = code.range[i];
+					if (rg < 0) {
+						float v = code.aggregate(i, 0, -1, symbols);
+						for (int k=0; k < n; k++) r[k] = v;
+					} else {
+						float[] lo = reg[a[rg]], hi = reg[b[rg]];
+						for (int k=0; k < n; k++) r[k] = code.aggregate(i, (int)lo[k], (int)hi[k], symbols);
+					}
+				}
+				}
+			}
+			System.arraycopy(reg[size-1], 0, result, start, n);
+		}
+	}
+
+	/**
+	 * Fork-join task that evaluates a range of rows, splitting it in half until it is
+	 * small enough to run directly.
+	 */
+	private class RowTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		SymbolTable symbols;
+		int[][] columns;
+		float[] result;
+		int from, to;
+
+		RowTask(SymbolTable symbols, int[][] columns, float[] result, int from, int to) {
+			this.symbols = symbols;
+			this.columns = columns;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to-from <= TASK_ROWS) {
+				evaluateRows(symbols, columns, result, from, to, new float[code.size][BLOCK]);
+				return;
+			}
+			// split on a block boundary
+			int mid = from + ((to-from)/2/BLOCK)*BLOCK;
+			invokeAll(new RowTask(symbols, columns, result, from, mid),
+					new RowTask(symbols, columns, result, mid, to));
+		}
+	}
+}
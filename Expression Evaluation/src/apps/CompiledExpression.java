@@ -0,0 +1,726 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import structures.IntStack;
+
+/**
+ * This class encapsulates an expression that has been parsed ONCE into a list of
+ * instructions. Each instruction computes one value from constants, symbol values, or the
+ * values of earlier instructions, so the list can be evaluated front to back any number of
+ * times without looking at the expression text again. The value of the last instruction
+ * is the value of the expression.
+ *
+ * The expression is type-checked when it is compiled. An integer expression (see
+ * isInteger) can also be evaluated exactly in long arithmetic, and any expression can be
+ * evaluated in double precision; evaluate itself works in float.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class CompiledExpression {
+
+	/**
+	 * Instruction opcodes. SUM, MIN, MAX and DOT are aggregates over a range of one array
+	 * (two for DOT); RANGE holds the bounds of such a range and has no value of its own.
+	 */
+	static final int CONST=0, SCALAR=1, ARRAY=2, ADD=3, SUB=4, MUL=5, DIV=6, NEG=7,
+			SUM=8, MIN=9, MAX=10, DOT=11, RANGE=12;
+
+	/**
+	 * Opcode of each instruction
+	 */
+	int[] op;
+
+	/**
+	 * First operand of each instruction: an instruction number for operators and RANGE,
+	 * the symbol table slot for SCALAR, ARRAY and the aggregates
+	 */
+	int[] a;
+
+	/**
+	 * Second operand of each instruction: an instruction number for binary operators and
+	 * RANGE, the instruction that computes the subscript for ARRAY, the slot of the second
+	 * array for DOT
+	 */
+	int[] b;
+
+	/**
+	 * For aggregates, the RANGE instruction that gives the index range, or -1 for the
+	 * whole array
+	 */
+	int[] range;
+
+	/**
+	 * Value of each CONST instruction, kept in double precision so that the long and double
+	 * evaluation modes see the literal exactly
+	 */
+	double[] constant;
+
+	/**
+	 * Value of each CONST instruction as the float evaluation mode sees it. For a literal
+	 * this is the literal rounded to float; for a constant folded by ExpressionOptimizer it
+	 * is the result of folding in float arithmetic, which can differ from rounding the
+	 * double result, so that optimizing never changes what evaluate returns
+	 */
+	float[] single;
+
+	/**
+	 * Number of instructions
+	 */
+	int size;
+
+	/**
+	 * Number of instructions before ExpressionOptimizer rewrote the list; the same as
+	 * size for a list that has not been optimized
+	 */
+	int unoptimizedSize;
+
+	/**
+	 * Name of the scalar at each slot of the symbol table the expression was compiled
+	 * against
+	 */
+	String[] scalarNames;
+
+	/**
+	 * Name of the array at each slot of the symbol table the expression was compiled
+	 * against
+	 */
+	String[] arrayNames;
+
+	/**
+	 * True if the expression type-checks as integer: it has no division and every constant
+	 * is a whole number, so it can be evaluated exactly with evaluateLong
+	 */
+	boolean integer;
+
+	/**
+	 * Initializes an empty instruction list.
+	 */
+	CompiledExpression() {
+		op = new int[16];
+		a = new int[16];
+		b = new int[16];
+		range = new int[16];
+		constant = new double[16];
+		single = new float[16];
+		size = 0;
+	}
+
+	/**
+	 * Parses an expression into an instruction list. Every variable in the expression
+	 * is resolved to its slot in the symbol table right here, so evaluation never has to
+	 * look up a symbol by name. A variable that is not in the table yet is added to it,
+	 * with a zero value.
+	 *
+	 * @param expr Expression text
+	 * @param symbols Symbol table
+	 * @return Compiled expression
+	 * @throws IllegalArgumentException If the expression is malformed
+	 */
+	public static CompiledExpression compile(String expr, SymbolTable symbols) {
+		return compile(new Lexer(expr), symbols);
+	}
+
+	/**
+	 * Compiles an expression that has already been tokenized.
+	 *
+	 * @param tokens Tokens of the expression
+	 * @param symbols Symbol table
+	 * @return Compiled expression
+	 * @throws IllegalArgumentException If the expression is malformed
+	 */
+	public static CompiledExpression compile(Lexer tokens, SymbolTable symbols) {
+		CompiledExpression code = new Parser(tokens, symbols).parse();
+		code.scalarNames = new String[symbols.numScalars()];
+		for (int i=0; i < code.scalarNames.length; i++) {
+			code.scalarNames[i] = symbols.scalar(i).name;
+		}
+		code.arrayNames = new String[symbols.numArrays()];
+		for (int i=0; i < code.arrayNames.length; i++) {
+			code.arrayNames[i] = symbols.array(i).name;
+		}
+		code.integer = code.typeCheck();
+		code.unoptimizedSize = code.size;
+		return code;
+	}
+
+	/**
+	 * Creates an empty symbol table with the slot layout this expression was compiled
+	 * against: every scalar has zero value, and every array null values.
+	 *
+	 * @return New symbol table
+	 */
+	public SymbolTable newSymbolTable() {
+		SymbolTable t = new SymbolTable();
+		for (String name : scalarNames) {
+			t.addScalar(name);
+		}
+		for (String name : arrayNames) {
+			t.addArray(name);
+		}
+		return t;
+	}
+
+	/**
+	 * Creates a symbol table with the slot layout this expression was compiled against,
+	 * holding the values of the symbols of the same names in another table (see
+	 * SymbolTable.bind).
+	 *
+	 * @param source Table to take the values from
+	 * @return New symbol table
+	 */
+	public SymbolTable bind(SymbolTable source) {
+		return newSymbolTable().bind(source);
+	}
+
+	/**
+	 * Evaluates the compiled expression against a set of symbol values. The table must
+	 * have the same slot layout as the one the expression was compiled with, but may hold
+	 * fresh symbol objects.
+	 *
+	 * @param symbols Symbol table
+	 * @return Value of the expression
+	 */
+	public float evaluate(SymbolTable symbols) {
+		return evaluate(symbols, new float[size]);
+	}
+
+	/**
+	 * Evaluates the compiled expression, using scratch space supplied by the caller, so
+	 * that nothing is allocated. The same scratch array can be reused for every call.
+	 *
+	 * @param symbols Symbol table
+	 * @param reg Scratch space (created by the caller) of at least size() floats; it
+	 *        receives the value of every instruction
+	 * @return Value of the expression
+	 */
+	public float evaluate(SymbolTable symbols, float[] reg) {
+		ArrayList<ScalarSymbol> scalars = symbols.scalars;
+		ArrayList<ArraySymbol> arrays = symbols.arrays;
+		for (int i=0; i < size; i++) {
+			switch (op[i]) {
+			case CONST: reg[i] = single[i]; break;
+			case SCALAR: reg[i] = scalars.get(a[i]).value; break;
+			case ARRAY: reg[i] = arrays.get(a[i]).get((int)reg[b[i]]); break;
+			case ADD: reg[i] = reg[a[i]] + reg[b[i]]; break;
+			case SUB: reg[i] = reg[a[i]] - reg[b[i]]; break;
+			case MUL: reg[i] = reg[a[i]] * reg[b[i]]; break;
+			case DIV: reg[i] = reg[a[i]] / reg[b[i]]; break;
+			case NEG: reg[i] = -reg[a[i]]; break;
+			case RANGE: reg[i] = 0; break;
+			default:
+				int r = range[i];
+				reg[i] = r < 0 ? aggregate(i, 0, -1, symbols) :
+					aggregate(i, (int)reg[a[r]], (int)reg[b[r]], symbols);
+			}
+		}
+		return reg[size-1];
+	}
+
+	/**
+	 * Tells whether the expression type-checks as integer: it has no division, and every
+	 * constant is a whole number. Symbol values are always ints, so such an expression can
+	 * be evaluated exactly, without any float conversion, by evaluateLong.
+	 *
+	 * @return True if the expression is an integer expression
+	 */
+	public boolean isInteger() {
+		return integer;
+	}
+
+	/**
+	 * Type-checks the instructions.
+	 *
+	 * @return True if there is no DIV, and every CONST is a whole number within long range
+	 */
+	boolean typeCheck() {
+		for (int i=0; i < size; i++) {
+			if (op[i] == DIV) {
+				return false;
+			}
+			if (op[i] == CONST && (constant[i] != Math.rint(constant[i]) ||
+					Math.abs(constant[i]) > Long.MAX_VALUE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluates an integer expression in long arithmetic (see isInteger).
+	 *
+	 * @param symbols Symbol table
+	 * @return Value of the expression
+	 * @throws IllegalStateException If the expression is not an integer expression
+	 */
+	public long evaluateLong(SymbolTable symbols) {
+		return evaluateLong(symbols, new long[size]);
+	}
+
+	/**
+	 * Evaluates an integer expression in long arithmetic, using scratch space supplied by
+	 * the caller. Array subscripts are the low 32 bits of the subscript value.
+	 *
+	 * @param symbols Symbol table
+	 * @param reg Scratch space of at least size() longs
+	 * @return Value of the expression
+	 * @throws IllegalStateException If the expression is not an integer expression
+	 */
+	public long evaluateLong(SymbolTable symbols, long[] reg) {
+		if (!integer) {
+			throw new IllegalStateException("Not an integer expression");
+		}
+		ArrayList<ScalarSymbol> scalars = symbols.scalars;
+		ArrayList<ArraySymbol> arrays = symbols.arrays;
+		for (int i=0; i < size; i++) {
+			switch (op[i]) {
+			case CONST: reg[i] = (long)constant[i]; break;
+			case SCALAR: reg[i] = scalars.get(a[i]).value; break;
+			case ARRAY: reg[i] = arrays.get(a[i]).get((int)reg[b[i]]); break;
+			case ADD: reg[i] = reg[a[i]] + reg[b[i]]; break;
+			case SUB: reg[i] = reg[a[i]] - reg[b[i]]; break;
+			case MUL: reg[i] = reg[a[i]] * reg[b[i]]; break;
+			case NEG: reg[i] = -reg[a[i]]; break;
+			case RANGE: reg[i] = 0; break;
+			default:
+				int r = range[i];
+				reg[i] = r < 0 ? aggregate(i, 0, -1, symbols) :
+					aggregate(i, (int)reg[a[r]], (int)reg[b[r]], symbols);
+			}
+		}
+		return reg[size-1];
+	}
+
+	/**
+	 * Evaluates the expression in double precision.
+	 *
+	 * @param symbols Symbol table
+	 * @return Value of the expression
+	 */
+	public double evaluateDouble(SymbolTable symbols) {
+		return evaluateDouble(symbols, new double[size]);
+	}
+
+	/**
+	 * Evaluates the expression in double precision, using scratch space supplied by the
+	 * caller. Subscripts are truncated to int, as in the float mode.
+	 *
+	 * @param symbols Symbol table
+	 * @param reg Scratch space of at least size() doubles
+	 * @return Value of the expression
+	 */
+	public double evaluateDouble(SymbolTable symbols, double[] reg) {
+		ArrayList<ScalarSymbol> scalars = symbols.scalars;
+		ArrayList<ArraySymbol> arrays = symbols.arrays;
+		for (int i=0; i < size; i++) {
+			switch (op[i]) {
+			case CONST: reg[i] = constant[i]; break;
+			case SCALAR: reg[i] = scalars.get(a[i]).value; break;
+			case ARRAY: reg[i] = arrays.get(a[i]).get((int)reg[b[i]]); break;
+			case ADD: reg[i] = reg[a[i]] + reg[b[i]]; break;
+			case SUB: reg[i] = reg[a[i]] - reg[b[i]]; break;
+			case MUL: reg[i] = reg[a[i]] * reg[b[i]]; break;
+			case DIV: reg[i] = reg[a[i]] / reg[b[i]]; break;
+			case NEG: reg[i] = -reg[a[i]]; break;
+			case RANGE: reg[i] = 0; break;
+			default:
+				int r = range[i];
+				reg[i] = r < 0 ? aggregate(i, 0, -1, symbols) :
+					aggregate(i, (int)reg[a[r]], (int)reg[b[r]], symbols);
+			}
+		}
+		return reg[size-1];
+	}
+
+	/**
+	 * Computes the value of one instruction, from the values of the earlier instructions.
+	 *
+	 * @param i Instruction number
+	 * @param reg Values of the instructions before i
+	 * @param symbols Symbol table
+	 * @return Value of instruction i
+	 */
+	float compute(int i, float[] reg, SymbolTable symbols) {
+		switch (op[i]) {
+		case CONST: return single[i];
+		case SCALAR: return symbols.scalars.get(a[i]).value;
+		case ARRAY: return symbols.arrays.get(a[i]).get((int)reg[b[i]]);
+		case NEG: return -reg[a[i]];
+		case RANGE: return 0;
+		case SUM: case MIN: case MAX: case DOT:
+			int r = range[i];
+			return r < 0 ? aggregate(i, 0, -1, symbols) :
+				aggregate(i, (int)reg[a[r]], (int)reg[b[r]], symbols);
+		default: return apply(op[i], reg[a[i]], reg[b[i]]);
+		}
+	}
+
+	/**
+	 * Computes an aggregate instruction over a range of its array (see ArrayAggregates).
+	 *
+	 * @param i Instruction number of a SUM, MIN, MAX or DOT
+	 * @param from First index
+	 * @param to One past the last index, or -1 with from 0 for the whole array
+	 * @param symbols Symbol table
+	 * @return Value of the aggregate
+	 */
+	long aggregate(int i, int from, int to, SymbolTable symbols) {
+		if (range[i] >= 0 && to < 0) {
+			throw new ArrayIndexOutOfBoundsException("Range [" + from + "," + to + ")");
+		}
+		ArraySymbol as = symbols.arrays.get(a[i]);
+		switch (op[i]) {
+		case SUM: return ArrayAggregates.sum(as, from, to);
+		case MIN: return ArrayAggregates.min(as, from, to);
+		case MAX: return ArrayAggregates.max(as, from, to);
+		default: return ArrayAggregates.dot(as, symbols.arrays.get(b[i]), from, to);
+		}
+	}
+
+	/**
+	 * Applies a binary operator.
+	 *
+	 * @param opcode ADD, SUB, MUL or DIV
+	 * @param x Left operand
+	 * @param y Right operand
+	 * @return Result
+	 */
+	static float apply(int opcode, float x, float y) {
+		switch (opcode) {
+		case ADD: return x + y;
+		case SUB: return x - y;
+		case MUL: return x * y;
+		default: return x / y;
+		}
+	}
+
+	/**
+	 * Applies a binary operator in double precision.
+	 *
+	 * @param opcode ADD, SUB, MUL or DIV
+	 * @param x Left operand
+	 * @param y Right operand
+	 * @return Result
+	 */
+	static double apply(int opcode, double x, double y) {
+		switch (opcode) {
+		case ADD: return x + y;
+		case SUB: return x - y;
+		case MUL: return x * y;
+		default: return x / y;
+		}
+	}
+
+	/**
+	 * Returns the number of instructions.
+	 *
+	 * @return Number of instructions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of instructions the expression had as compiled, before it was
+	 * optimized.
+	 *
+	 * @return Number of instructions before optimization
+	 */
+	public int unoptimizedSize() {
+		return unoptimizedSize;
+	}
+
+	/**
+	 * Appends an instruction.
+	 *
+	 * @param opcode Opcode
+	 * @param x First operand
+	 * @param y Second operand
+	 * @param c Constant value, used only for CONST
+	 * @return Number of the new instruction
+	 */
+	int emit(int opcode, int x, int y, double c) {
+		return emit(opcode, x, y, c, (float)c);
+	}
+
+	/**
+	 * Appends an instruction, with separate double and float values for a constant.
+	 *
+	 * @param opcode Opcode
+	 * @param x First operand
+	 * @param y Second operand
+	 * @param c Constant value for the double and long evaluation modes, used only for CONST
+	 * @param f Constant value for the float evaluation mode, used only for CONST
+	 * @return Number of the new instruction
+	 */
+	int emit(int opcode, int x, int y, double c, float f) {
+		if (size == op.length) {
+			int n = size*2;
+			op = Arrays.copyOf(op, n);
+			a = Arrays.copyOf(a, n);
+			b = Arrays.copyOf(b, n);
+			range = Arrays.copyOf(range, n);
+			constant = Arrays.copyOf(constant, n);
+			single = Arrays.copyOf(single, n);
+		}
+		op[size] = opcode;
+		a[size] = x;
+		b[size] = y;
+		range[size] = -1;
+		constant[size] = c;
+		single[size] = f;
+		return size++;
+	}
+
+	/**
+	 * Appends an aggregate instruction.
+	 *
+	 * @param opcode SUM, MIN, MAX or DOT
+	 * @param x Slot of the array
+	 * @param y Slot of the second array for DOT, -1 otherwise
+	 * @param r RANGE instruction, or -1 for the whole array
+	 * @return Number of the new instruction
+	 */
+	int emitAggregate(int opcode, int x, int y, int r) {
+		int i = emit(opcode, x, y, 0);
+		range[i] = r;
+		return i;
+	}
+
+	/**
+	 * Tells whether an opcode is one of the aggregates SUM, MIN, MAX and DOT.
+	 *
+	 * @param opcode Opcode
+	 * @return True for an aggregate
+	 */
+	static boolean isAggregate(int opcode) {
+		return opcode >= SUM && opcode <= DOT;
+	}
+
+	/**
+	 * Shunting-yard parser that emits instructions in evaluation order. It reads the
+	 * tokens left to right in a single loop, keeping pending operators and brackets on one
+	 * int stack and the instruction numbers of finished operands on another, so nesting
+	 * depth is limited only by memory, not by the thread stack.
+	 *
+	 * The aggregate functions are sum(A), min(A), max(A) and dot(A,B) over whole arrays,
+	 * and sum(A,lo,hi), min(A,lo,hi), max(A,lo,hi) and dot(A,B,lo,hi) over the indexes
+	 * lo up to but not including hi, where lo and hi are expressions.
+	 */
+	private static class Parser {
+
+		/**
+		 * Entries on the operator stack other than the opcodes ADD, SUB, MUL, DIV and NEG.
+		 * An open bracket is pushed as BRACKET plus the slot of its array. The open
+		 * parenthesis of an aggregate with a range is pushed as CALL minus twice its
+		 * opcode, minus one more once its lower bound has been read.
+		 */
+		static final int PAREN = -1, BRACKET = 1000, CALL = -100;
+
+		Lexer tokens;
+		SymbolTable symbols;
+		CompiledExpression code;
+		IntStack ops;
+		IntStack vals;
+
+		/**
+		 * Array slots of the open aggregate calls, two per call
+		 */
+		IntStack calls;
+
+		Parser(Lexer tokens, SymbolTable symbols) {
+			this.tokens = tokens;
+			this.symbols = symbols;
+			code = new CompiledExpression();
+			ops = new IntStack();
+			vals = new IntStack();
+			calls = new IntStack();
+		}
+
+		CompiledExpression parse() {
+			boolean operand = true; // true when an operand is expected next
+			for (int t=0; t < tokens.count; t++) {
+				int k = tokens.kind[t];
+				if (operand) {
+					switch (k) {
+					case Lexer.MINUS:
+						ops.push(NEG);
+						break;
+					case Lexer.LPAREN:
+						ops.push(PAREN);
+						break;
+					case Lexer.NUMBER:
+						vals.push(code.emit(CONST, 0, 0, Double.parseDouble(tokens.text(t))));
+						operand = false;
+						break;
+					case Lexer.NAME:
+						if (tokens.isCall(t)) {
+							t = call(t);
+							operand = tokens.kind[t] == Lexer.COMMA;
+						} else if (tokens.isArrayName(t)) {
+							ops.push(BRACKET + symbols.addArray(tokens.text(t)));
+							t++;
+						} else {
+							vals.push(code.emit(SCALAR, symbols.addScalar(tokens.text(t)), 0, 0));
+							operand = false;
+						}
+						break;
+					default:
+						throw unexpected(t);
+					}
+					continue;
+				}
+				switch (k) {
+				case Lexer.PLUS: case Lexer.MINUS: case Lexer.TIMES: case Lexer.DIVIDE:
+					int op = k == Lexer.PLUS ? ADD : k == Lexer.MINUS ? SUB : k == Lexer.TIMES ? MUL : DIV;
+					while (!ops.isEmpty() && precedence(ops.peek()) >= precedence(op)) {
+						reduce();
+					}
+					ops.push(op);
+					operand = true;
+					break;
+				case Lexer.COMMA:
+					while (!ops.isEmpty() && isOperator(ops.peek())) {
+						reduce();
+					}
+					if (ops.isEmpty() || ops.peek() > CALL || (CALL - ops.peek()) % 2 != 0) {
+						throw unexpected(t);
+					}
+					ops.push(ops.pop() - 1);
+					operand = true;
+					break;
+				case Lexer.RPAREN: case Lexer.RBRACKET:
+					while (!ops.isEmpty() && isOperator(ops.peek())) {
+						reduce();
+					}
+					if (ops.isEmpty() || (k == Lexer.RPAREN) != (ops.peek() < BRACKET)) {
+						throw new IllegalArgumentException("Unmatched '" + tokens.text(t) +
+								"' at position " + tokens.start[t]);
+					}
+					int open = ops.pop();
+					if (open >= BRACKET) {
+						vals.push(code.emit(ARRAY, open - BRACKET, vals.pop(), 0));
+					} else if (open <= CALL) {
+						if ((CALL - open) % 2 == 0) {
+							throw unexpected(t);
+						}
+						int hi = vals.pop();
+						int lo = vals.pop();
+						int r = code.emit(RANGE, lo, hi, 0);
+						int y = calls.pop();
+						int x = calls.pop();
+						vals.push(code.emitAggregate((CALL - open) / 2, x, y, r));
+					}
+					break;
+				case Lexer.END:
+					while (!ops.isEmpty()) {
+						if (!isOperator(ops.peek())) {
+							throw new IllegalArgumentException("Unclosed bracket");
+						}
+						reduce();
+					}
+					return code;
+				default:
+					throw unexpected(t);
+				}
+			}
+			throw new IllegalArgumentException("Unexpected end of expression");
+		}
+
+		/**
+		 * Parses the start of an aggregate call: the function name, the open parenthesis
+		 * and the array names. A call over a whole array is emitted right away; for a
+		 * call with a range, the call is pushed and its bounds are parsed as operands.
+		 *
+		 * @param t Token number of the function name
+		 * @return Token number of the last token parsed
+		 */
+		int call(int t) {
+			String name = tokens.text(t);
+			int fn = name.equals("sum") ? SUM : name.equals("min") ? MIN :
+				name.equals("max") ? MAX : name.equals("dot") ? DOT : -1;
+			if (fn == -1) {
+				throw new IllegalArgumentException("Unknown function '" + name +
+						"' at position " + tokens.start[t]);
+			}
+			t += 2;
+			int x = arrayArgument(t);
+			int y = -1;
+			if (fn == DOT) {
+				if (tokens.kind[++t] != Lexer.COMMA) {
+					throw unexpected(t);
+				}
+				y = arrayArgument(++t);
+			}
+			t++;
+			if (tokens.kind[t] == Lexer.RPAREN) {
+				vals.push(code.emitAggregate(fn, x, y, -1));
+			} else if (tokens.kind[t] == Lexer.COMMA) {
+				calls.push(x);
+				calls.push(y);
+				ops.push(CALL - 2*fn);
+			} else {
+				throw unexpected(t);
+			}
+			return t;
+		}
+
+		/**
+		 * Reads an array name given as an argument of an aggregate.
+		 *
+		 * @param t Token number
+		 * @return Slot of the array
+		 */
+		int arrayArgument(int t) {
+			if (tokens.kind[t] != Lexer.NAME || tokens.isArrayName(t) || tokens.isCall(t)) {
+				throw unexpected(t);
+			}
+			return symbols.addArray(tokens.text(t));
+		}
+
+		/**
+		 * Tells whether an operator stack entry is an operator, rather than an open
+		 * parenthesis, bracket or call.
+		 */
+		static boolean isOperator(int e) {
+			return e >= ADD && e <= NEG;
+		}
+
+		IllegalArgumentException unexpected(int t) {
+			if (tokens.kind[t] == Lexer.END) {
+				return new IllegalArgumentException("Unexpected end of expression");
+			}
+			return new IllegalArgumentException("Unexpected '" + tokens.text(t) +
+					"' at position " + tokens.start[t]);
+		}
+
+		/**
+		 * Pops the top operator and emits it, applied to the top one or two operands.
+		 */
+		void reduce() {
+			int op = ops.pop();
+			if (op == NEG) {
+				vals.push(code.emit(NEG, vals.pop(), 0, 0));
+			} else {
+				int y = vals.pop();
+				int x = vals.pop();
+				vals.push(code.emit(op, x, y, 0));
+			}
+		}
+
+		/**
+		 * Returns the precedence of an operator stack entry; brackets are lowest, so
+		 * that no operator is reduced past them.
+		 */
+		static int precedence(int op) {
+			switch (op) {
+			case ADD: case SUB: return 1;
+			case MUL: case DIV: return 2;
+			case NEG: return 3;
+			default: return 0;
+			}
+		}
+	}
+}
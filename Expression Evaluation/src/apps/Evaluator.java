@@ -2,14 +2,20 @@ package apps;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class Evaluator {
 
 	/**
-	 * @param args
+	 * @param args None for interactive mode, or -batch followed by the batch mode
+	 *        arguments (see EvaluatorBatch)
 	 */
 	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("-batch")) {
+			EvaluatorBatch.run(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		Scanner sc = new Scanner(System.in);
 		while (true) {
 			System.out.print("\nEnter the expression, or hit return to quit => ");
@@ -18,13 +24,17 @@ public class Evaluator {
 				break;
 			}
 			Expression expr = new Expression(line);
-			expr.buildSymbols();
+			try {
+				expr.buildSymbols();
+			} catch (IllegalArgumentException e) {
+				System.out.println("Malformed expression: " + e.getMessage());
+				continue;
+			}
 
 			System.out.print("Enter symbol values file name, or hit return if no symbols => ");
 			line = sc.nextLine();
 			if (line.length() != 0) {
-				Scanner scfile = new Scanner(new File(line));
-				expr.loadSymbolValues(scfile);
+				expr.loadSymbolValues(new File(line));
 			expr.printScalars();
 				expr.printArrays();
 			}
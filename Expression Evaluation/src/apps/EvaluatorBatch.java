@@ -0,0 +1,413 @@
+package apps;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Non-interactive batch mode of the Evaluator. Reads a file of expressions, one per line,
+ * and evaluates each of them against every one of a list of symbol values files, on a
+ * pool of worker threads. Each output line holds the values of one expression, one per
+ * symbol file, separated by tabs, in the same order as the input expressions. A value
+ * that cannot be computed, or an expression that does not compile, is written as ERROR
+ * followed by the reason. At the end, the throughput and the latency percentiles are
+ * printed on the standard error. Expressions that use the same symbols share the symbol
+ * tables bound to their slot layout, one per symbol file, which are made only once.
+ *
+ * With -shared, all the expressions are merged into one MultiExpression, so that the
+ * subexpressions they have in common are computed once per symbol file; the symbol files
+ * are then evaluated in parallel instead of the expressions, and the latencies are those
+ * of the merged evaluation against each symbol file.
+ *
+ * With -snapshot, each symbol file is loaded from a binary snapshot kept next to it (see
+ * SymbolSnapshot), which is made the first time and remade whenever the file changes.
+ *
+ * Usage: java apps.Evaluator -batch [-threads n] [-shared] [-snapshot] [-out file] expressions symbols...
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class EvaluatorBatch {
+
+	/**
+	 * Number of expressions in flight per worker thread, which bounds the memory used
+	 * by results waiting to be written in order
+	 */
+	static final int WINDOW = 64;
+
+	/**
+	 * Symbol tables loaded from the symbol files, with every symbol in each file
+	 */
+	SymbolTable[] tables;
+
+	/**
+	 * Symbol tables bound to each slot layout, one per symbol file, keyed on the scalar
+	 * and array names of the layout
+	 */
+	ConcurrentHashMap<List<List<String>>,SymbolTable[]> bound =
+		new ConcurrentHashMap<List<List<String>>,SymbolTable[]>();
+
+	/**
+	 * Evaluation times, in nanoseconds
+	 */
+	long[] latencies = new long[1024];
+
+	/**
+	 * Number of evaluation times recorded
+	 */
+	int count = 0;
+
+	/**
+	 * Runs batch mode with the command line arguments that follow -batch.
+	 *
+	 * @param args Command line arguments
+	 * @throws IOException If an input file cannot be read, or the output cannot be written
+	 */
+	public static void run(String[] args)
+	throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		String out = null;
+		boolean shared = false;
+		boolean snapshot = false;
+		int i = 0;
+		while (i < args.length && args[i].startsWith("-")) {
+			if (args[i].equals("-shared") || args[i].equals("-snapshot")) {
+				shared |= args[i].equals("-shared");
+				snapshot |= args[i].equals("-snapshot");
+				i++;
+				continue;
+			}
+			if (args[i].equals("-threads") && i+1 < args.length) {
+				threads = Integer.parseInt(args[i+1]);
+			} else if (args[i].equals("-out") && i+1 < args.length) {
+				out = args[i+1];
+			} else {
+				usage();
+				return;
+			}
+			i += 2;
+		}
+		if (args.length - i < 2) {
+			usage();
+			return;
+		}
+		EvaluatorBatch batch = new EvaluatorBatch();
+		batch.loadSymbols(Arrays.copyOfRange(args, i+1, args.length), snapshot);
+		PrintStream ps = out == null ? System.out : new PrintStream(new File(out));
+		try {
+			if (shared) {
+				batch.evaluateShared(new File(args[i]), ps, threads);
+			} else {
+				batch.evaluate(new File(args[i]), ps, threads);
+			}
+		} finally {
+			if (out != null) {
+				ps.close();
+			}
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: java apps.Evaluator -batch [-threads n] [-shared] [-snapshot] [-out file] expressions symbols...");
+	}
+
+	/**
+	 * Loads every symbol file once.
+	 *
+	 * @param files Names of the symbol files
+	 * @param snapshot True to load each file through its binary snapshot
+	 * @throws IOException If a file cannot be read
+	 */
+	void loadSymbols(String[] files, boolean snapshot)
+	throws IOException {
+		tables = new SymbolTable[files.length];
+		for (int f=0; f < files.length; f++) {
+			if (snapshot) {
+				File source = new File(files[f]);
+				tables[f] = SymbolSnapshot.loadOrBuild(source, SymbolSnapshot.snapshotFile(source));
+				continue;
+			}
+			tables[f] = new SymbolTable();
+			tables[f].loadAll(new File(files[f]));
+		}
+	}
+
+	/**
+	 * Evaluates every expression in a file, and writes the results in input order.
+	 *
+	 * @param expressions File of expressions, one per line
+	 * @param ps Stream for the results
+	 * @param threads Number of worker threads
+	 * @throws IOException If the expressions file cannot be read
+	 */
+	void evaluate(File expressions, PrintStream ps, int threads)
+	throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+		long start = System.nanoTime();
+		BufferedReader br = new BufferedReader(new FileReader(expressions));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (pending.size() == threads*WINDOW) {
+					ps.println(result(pending.poll()));
+				}
+				final String expr = line;
+				pending.add(pool.submit(new Callable<String>() {
+					public String call() {
+						return evaluate(expr);
+					}
+				}));
+			}
+			while (!pending.isEmpty()) {
+				ps.println(result(pending.poll()));
+			}
+		} finally {
+			br.close();
+			pool.shutdownNow();
+		}
+		printStatistics(System.nanoTime() - start, count, "expression");
+	}
+
+	/**
+	 * Compiles one expression, or takes it from the shared cache if it has been seen
+	 * before, evaluates it against every symbol table, and records the time it took.
+	 *
+	 * @param expr Expression
+	 * @return Tab-separated values, or an error message if the expression does not
+	 *         compile
+	 */
+	String evaluate(String expr) {
+		long t0 = System.nanoTime();
+		StringBuilder sb = new StringBuilder();
+		try {
+			CompiledExpression code = Expression.compiledCache.get(expr);
+			SymbolTable[] symbols = bind(code);
+			float[] reg = new float[code.size()];
+			for (int f=0; f < tables.length; f++) {
+				if (f > 0) {
+					sb.append('\t');
+				}
+				try {
+					sb.append(code.evaluate(symbols[f], reg));
+				} catch (RuntimeException e) {
+					// e.g. an array that is not in this symbol file
+					sb.append("ERROR ").append(e.getClass().getSimpleName());
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			sb.setLength(0);
+			sb.append("ERROR ").append(e.getMessage());
+		}
+		record(System.nanoTime() - t0);
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the symbol tables bound to the slot layout of a compiled expression, one per
+	 * symbol file, binding them the first time the layout is seen. Evaluation only reads
+	 * the tables, so they are shared by all the expressions with that layout, on all
+	 * threads.
+	 *
+	 * @param code Compiled expression
+	 * @return Bound symbol table for each symbol file
+	 */
+	SymbolTable[] bind(CompiledExpression code) {
+		List<List<String>> layout = Arrays.asList(
+				Arrays.asList(code.scalarNames), Arrays.asList(code.arrayNames));
+		SymbolTable[] symbols = bound.get(layout);
+		if (symbols == null) {
+			symbols = new SymbolTable[tables.length];
+			for (int f=0; f < tables.length; f++) {
+				symbols[f] = code.bind(tables[f]);
+			}
+			SymbolTable[] other = bound.putIfAbsent(layout, symbols);
+			if (other != null) {
+				symbols = other;
+			}
+		}
+		return symbols;
+	}
+
+	/**
+	 * Evaluates every expression in a file as one merged MultiExpression, one symbol file
+	 * per task, and writes the results in input order. Expressions that do not compile are
+	 * left out of the merge. If the merged evaluation fails for a symbol file, for instance
+	 * because an array is missing from it, the expressions are evaluated one by one for that
+	 * file, so that only those that need the missing symbol show an error.
+	 *
+	 * @param expressions File of expressions, one per line
+	 * @param ps Stream for the results
+	 * @param threads Number of worker threads
+	 * @throws IOException If the expressions file cannot be read
+	 */
+	void evaluateShared(File expressions, PrintStream ps, int threads)
+	throws IOException {
+		long start = System.nanoTime();
+		final ArrayList<String> exprs = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new FileReader(expressions));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				exprs.add(line);
+			}
+		} finally {
+			br.close();
+		}
+
+		// merge only the expressions that compile; the others are reported as they are
+		String[] errors = new String[exprs.size()];
+		final ArrayList<String> good = new ArrayList<String>();
+		final int[] index = new int[exprs.size()];
+		for (int k=0; k < exprs.size(); k++) {
+			try {
+				Expression.compiledCache.get(exprs.get(k));
+				index[k] = good.size();
+				good.add(exprs.get(k));
+			} catch (IllegalArgumentException e) {
+				errors[k] = "ERROR " + e.getMessage();
+				index[k] = -1;
+			}
+		}
+		if (good.isEmpty()) {
+			// nothing to merge or evaluate; every line is an error
+			for (String error : errors) {
+				ps.println(error);
+			}
+			printStatistics(System.nanoTime() - start, exprs.size(), "symbol file");
+			return;
+		}
+		final MultiExpression multi = new MultiExpression(good.toArray(new String[good.size()]));
+
+		final String[][] cells = new String[tables.length][];
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			ArrayList<Future<String[]>> tasks = new ArrayList<Future<String[]>>();
+			for (int f=0; f < tables.length; f++) {
+				final int file = f;
+				tasks.add(pool.submit(new Callable<String[]>() {
+					public String[] call() {
+						long t0 = System.nanoTime();
+						String[] values = evaluateShared(multi, exprs, index, file);
+						record(System.nanoTime() - t0);
+						return values;
+					}
+				}));
+			}
+			for (int f=0; f < tables.length; f++) {
+				try {
+					cells[f] = tasks.get(f).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		for (int k=0; k < exprs.size(); k++) {
+			if (errors[k] != null) {
+				ps.println(errors[k]);
+				continue;
+			}
+			StringBuilder sb = new StringBuilder();
+			for (int f=0; f < tables.length; f++) {
+				if (f > 0) {
+					sb.append('\t');
+				}
+				sb.append(cells[f][index[k]]);
+			}
+			ps.println(sb);
+		}
+		printStatistics(System.nanoTime() - start, exprs.size(), "symbol file");
+		System.err.printf("merged instructions: %d, separately: %d%n",
+				multi.mergedSize(), multi.separateSize());
+	}
+
+	/**
+	 * Evaluates the merged expressions against one symbol file.
+	 *
+	 * @return Value, or error, of each merged expression
+	 */
+	private String[] evaluateShared(MultiExpression multi, ArrayList<String> exprs,
+			int[] index, int file) {
+		String[] cells = new String[multi.size()];
+		try {
+			float[] values = multi.evaluate(multi.code().bind(tables[file]));
+			for (int m=0; m < values.length; m++) {
+				cells[m] = Float.toString(values[m]);
+			}
+		} catch (RuntimeException e) {
+			for (int k=0; k < exprs.size(); k++) {
+				if (index[k] < 0) {
+					continue;
+				}
+				try {
+					CompiledExpression code = Expression.compiledCache.get(exprs.get(k));
+					cells[index[k]] = Float.toString(code.evaluate(bind(code)[file]));
+				} catch (RuntimeException ex) {
+					cells[index[k]] = "ERROR " + ex.getClass().getSimpleName();
+				}
+			}
+		}
+		return cells;
+	}
+
+	private synchronized void record(long nanos) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, 2*count);
+		}
+		latencies[count++] = nanos;
+	}
+
+	private static String result(Future<String> f) {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			return "ERROR " + e.getCause();
+		}
+	}
+
+	/**
+	 * Prints throughput and latency percentiles on the standard error.
+	 *
+	 * @param elapsed Total time, in nanoseconds
+	 * @param expressions Number of expressions evaluated
+	 * @param per What each recorded latency is the evaluation of
+	 */
+	synchronized void printStatistics(long elapsed, int expressions, String per) {
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		System.err.printf("%d expressions x %d symbol files in %.3f s, %.1f expressions/s%n",
+				expressions, tables.length, elapsed/1e9, expressions/(elapsed/1e9));
+		if (count > 0) {
+			System.err.printf("latency us per " + per + ": p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+					percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+					percentile(sorted, 99.9), sorted[count-1]/1e3);
+		}
+		System.err.println("expression cache: " + Expression.compiledCache);
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		int i = (int)Math.ceil(p/100*sorted.length) - 1;
+		return sorted[Math.max(0, i)]/1e3;
+	}
+}
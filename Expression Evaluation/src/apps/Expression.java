@@ -4,8 +4,6 @@ import java.io.*;
 import java.util.*;
 import java.util.regex.*;
 
-import structures.Stack;
-
 public class Expression {
 
 	/**
@@ -22,6 +20,26 @@ public class Expression {
 	 * Array symbols in the expression
 	 */
 	ArrayList<ArraySymbol> arrays;
+	
+	/**
+	 * Slots of the scalar and array symbols; its lists are the scalars and arrays lists
+	 */
+	SymbolTable symbols;
+	
+	/**
+	 * Compiled form of the expression, shared through compiledCache
+	 */
+	CompiledExpression compiled;
+	
+	/**
+	 * Scratch space for evaluate, holding the value of each compiled instruction
+	 */
+	float[] registers;
+
+	/**
+	 * Profiler that evaluate runs through when profiling is on, null when it is off
+	 */
+	ExpressionProfiler profiler;
     
     /**
      * String containing all delimiters (characters other than variables and constants), 
@@ -29,6 +47,12 @@ public class Expression {
      */
     public static final String delims = " \t*+-/()[]";
     
+    /**
+     * Compiled expressions shared by all Expression objects, so that an expression text
+     * that has been seen before is not parsed again
+     */
+    public static final ExpressionCache compiledCache = new ExpressionCache(4096);
+    
     /**
      * Initializes this Expression object with an input expression. Sets all other
      * fields to null.
@@ -45,214 +69,116 @@ public class Expression {
      * even if it appears more than once in the expression.
      * At this time, values for all variables are set to
      * zero - they will be loaded from a file in the loadSymbolValues method.
+     * The expression is tokenized once, in linear time, and its compiled form is taken
+     * from compiledCache, or compiled from the same tokens if it is not cached yet; the
+     * symbols are those the compiled form refers to.
+     * 
+     * Since the expression is compiled here, a malformed expression is rejected here,
+     * rather than when it is evaluated.
+     * 
+     * @throws IllegalArgumentException If the expression is malformed; the message says
+     *         what is wrong and where
      */
     public void buildSymbols() {
-    		/** COMPLETE THIS METHOD **/
-    	arrays=new ArrayList<ArraySymbol>();
-    	scalars=new ArrayList<ScalarSymbol>();
-       String temp=expr;
-       StringTokenizer st=new StringTokenizer(temp,delims);
-       while(st.hasMoreTokens()){
-    	   String str=st.nextToken();
-    	   int index=temp.indexOf(str)+str.length()-1;
-    			   if(index+1<=temp.length()-1&&temp.charAt(index+1)=='['){
-    		   ArraySymbol current=new ArraySymbol(str);
-    		   if(arrays.contains(current)){
-    			   continue;
-    		   }
-    		   else{
-    		   arrays.add(current);
-    		   }
-    	   }
-    	   else{
-    		   if(Character.isLetter(str.charAt(str.length()-1))){
-    			   ScalarSymbol current1=new ScalarSymbol(str);
-    			   if(scalars.contains(current1)){
-    				   continue;
-    			   }
-    			   else{
-    			   scalars.add(current1);
-    			   }
-    		   }
-    		   else{
-    			   continue;
-    		   }
-    	   }
-       }
+    	compiled=compiledCache.get(new Lexer(expr));
+    	symbols=compiled.newSymbolTable();
+    	arrays=symbols.arrays;
+    	scalars=symbols.scalars;
+    	registers=null;
+    	profiler=null;
     }
     
     /**
-     * Loads values for symbols in the expression
+     * Loads values for symbols in the expression. Each name in the input is resolved
+     * to its slot in the symbol table with a single hash lookup.
      * 
      * @param sc Scanner for values input
      * @throws IOException If there is a problem with the input 
      */
     public void loadSymbolValues(Scanner sc) 
     throws IOException {
-        while (sc.hasNextLine()) {
-            StringTokenizer st = new StringTokenizer(sc.nextLine().trim());
-            int numTokens = st.countTokens();
-            String sym = st.nextToken();
-            ScalarSymbol ssymbol = new ScalarSymbol(sym);
-            ArraySymbol asymbol = new ArraySymbol(sym);
-            int ssi = scalars.indexOf(ssymbol);
-            int asi = arrays.indexOf(asymbol);
-            if (ssi == -1 && asi == -1) {
-            	continue;
-            }
-            int num = Integer.parseInt(st.nextToken());
-            if (numTokens == 2) { // scalar symbol
-                scalars.get(ssi).value = num;
-            } else { // array symbol
-            	asymbol = arrays.get(asi);
-            	asymbol.values = new int[num];
-                // following are (index,val) pairs
-                while (st.hasMoreTokens()) {
-                    String tok = st.nextToken();
-                    StringTokenizer stt = new StringTokenizer(tok," (,)");
-                    int index = Integer.parseInt(stt.nextToken());
-                    int val = Integer.parseInt(stt.nextToken());
-                    asymbol.values[index] = val;              
-                }
-            }
-        }
+        symbols.load(sc);
+    }
+    
+    /**
+     * Loads values for symbols in the expression from a symbol values file, with a
+     * SymbolFileLoader, which maps the file and parses it in parallel. Nothing is written
+     * next to the file; a binary snapshot is only used when asked for (see SymbolSnapshot
+     * and the -snapshot option of EvaluatorBatch).
+     * 
+     * @param file Symbol values file
+     * @throws IOException If the file cannot be read, or a line is malformed
+     */
+    public void loadSymbolValues(File file) 
+    throws IOException {
+        symbols.load(file);
     }
     
     
     /**
-     * Evaluates the expression, using RECURSION to evaluate subexpressions and to evaluate array 
-     * subscript expressions.
+     * Evaluates the expression by running its compiled instructions against the current
+     * symbol values. Nothing is allocated after the first call.
      * 
      * @return Result of evaluation
      */
     public float evaluate() {
-    		/** COMPLETE THIS METHOD **/
-    		// following line just a placeholder for compilation
-    	expr=expr.replace(" ", "");
-    	return basicop(reev(expr));
-    }
-    private String reev(String str){
-    	for(int i=0;i<=str.length()-1;i++){
-    		if(str.charAt(i)=='('||str.charAt(i)=='['){
-    			int j=i;
-    			Stack<Integer> stk=new Stack<Integer>();
-    			stk.push(i);
-    		    do{
-    		    	j++;
-    		    	if(str.charAt(j)=='['||str.charAt(j)=='('){
-    		    		stk.push(j);
-    		    	}
-    		    	if(str.charAt(j)==']'||str.charAt(j)==')'){
-    		    		stk.pop();
-    		    	}
-    		    }while(!stk.isEmpty());
-    			//find anothe bracket
-    			if(str.charAt(i)=='('){
-    				if(j<str.length()-1){
-    				return str.substring(0, i)+Float.toString(basicop(reev(str.substring(i+1,j))))+reev(str.substring(j+1));}
-    				else{
-    					return str.substring(0, i)+Float.toString(basicop(reev(str.substring(i+1,j))));
-    				}
-    			}
-    			else if(str.charAt(i)=='['){
-    				int index=i;
-    				for(int k=i;k>=0;k--){
-    					if(k==0){
-    						index=k;
-    					}
-    					if(str.charAt(k)=='+'||str.charAt(k)=='-'||str.charAt(k)=='*'||str.charAt(k)=='/'){
-    						index=k+1;
-    						break;
-    					}
-    				}
-    				// find the beginning of of the array 
-    				if(j<str.length()-1){
-        				return str.substring(0, index)+Integer.toString(getavalue(str.substring(index,i+1),(int)basicop(reev(str.substring(i+1,j)))))+reev(str.substring(j+1));}
-        				else{
-        					return str.substring(0, index)+Integer.toString(getavalue(str.substring(index,i+1),(int)basicop(reev(str.substring(i+1,j)))));
-        				}
-    			}
-    		}
+    	if (profiler != null) {
+    		return profiler.evaluate(symbols);
     	}
-    	if(str.charAt(0)=='+'||str.charAt(0)=='-'||str.charAt(0)=='*'||str.charAt(0)=='/'){
-    		return str;
+    	if (registers == null) {
+    		registers = new float[compiled.size()];
     	}
-    	return Float.toString(basicop(str));
+    	return compiled.evaluate(symbols, registers);
     }
-    private float basicop(String str){
-    	float total=0;
-    	StringTokenizer st=new StringTokenizer(str, "+");
-    	while(st.hasMoreTokens()){
-    		String temp=st.nextToken();
-    		int f=0, sum=0;
-    		for(int i=0;i<=temp.length()-1;i++){
-    			if(i!=0&&(temp.charAt(i)=='-'&&(temp.charAt(i-1)!='*'&&temp.charAt(i-1)!='/'))){
-    				if(f==0){
-    					sum+=product(temp.substring(f, i));
-    					f=i+1;
-    				}
-    				else{
-    					sum-=product(temp.substring(f, i));
-    					f=i+1;
-    				}
-    			}
-    			if(i==temp.length()-1){
-    				if(f==0){
-    					sum+=product(temp.substring(f, i+1));
-    					f=i+1;
-    				}
-    				else{
-    					sum-=product(temp.substring(f, i+1));
-    					f=i+1;
-    				}
-    			}
-    		}
-    		total+=sum;
-    	}
-    	return total;
+    
+    /**
+     * Turns profiling on or off. While it is on, evaluate records the time spent in every
+     * subexpression and the reads of every symbol; turning it on again starts from zero.
+     * Must be called after buildSymbols.
+     * 
+     * @param on True to turn profiling on
+     */
+    public void setProfiling(boolean on) {
+    	profiler = on ? new ExpressionProfiler(compiled) : null;
     }
-
-    	
-    	
-    private float getsvalue(String str){
-    	if(Character.isLetter(str.charAt(str.length()-1))){
-    		ScalarSymbol ssl=new ScalarSymbol(str);
-    		int indexssl=scalars.indexOf(ssl);
-    		int value=scalars.get(indexssl).value;
-    		return (float)value;
-    	}
-    	else{
-    		return Float.parseFloat(str);
-    	}
-    }	
-    private int getavalue(String str, int i){
-    	str=str.substring(0,str.indexOf('['));
-    	ArraySymbol asl=new ArraySymbol(str);
-    	int indexasl=arrays.indexOf(asl);
-    	return arrays.get(indexasl).values[i];
+    
+    /**
+     * Returns the profile collected since profiling was turned on.
+     * 
+     * @return Profiler, or null if profiling is off
+     */
+    public ExpressionProfiler getProfiler() {
+    	return profiler;
     }
-    private float product(String str){
-    	float result=1;
-    	float sum=1;
-    	StringTokenizer st=new StringTokenizer(str,"/");
-    	String y=st.nextToken();
-    	StringTokenizer sty=new StringTokenizer(y,"*");
-    	while(sty.hasMoreTokens()){
-			sum*=getsvalue(sty.nextToken());
-		}
-    	result=sum;
-    	while(st.hasMoreTokens()){
-    		float pdt=1;
-    		String x=st.nextToken();
-    		StringTokenizer stx=new StringTokenizer(x,"*");
-    		while(stx.hasMoreTokens()){
-    			pdt*=getsvalue(stx.nextToken());
-    		}
-    		result/=pdt;
-    	}
-    	return result;
+    
+    /**
+     * Tells whether the expression is an integer expression (no division, and only whole
+     * number constants), which can be evaluated exactly by evaluateLong.
+     * 
+     * @return True if the expression is an integer expression
+     */
+    public boolean isInteger() {
+    	return compiled.isInteger();
+    }
+    
+    /**
+     * Evaluates an integer expression in long arithmetic, with no float conversion.
+     * 
+     * @return Result of evaluation
+     * @throws IllegalStateException If the expression is not an integer expression
+     */
+    public long evaluateLong() {
+    	return compiled.evaluateLong(symbols);
+    }
+    
+    /**
+     * Evaluates the expression in double precision.
+     * 
+     * @return Result of evaluation
+     */
+    public double evaluateDouble() {
+    	return compiled.evaluateDouble(symbols);
     }
- 
     
     /**
      * Utility method, prints the symbols in the scalars list
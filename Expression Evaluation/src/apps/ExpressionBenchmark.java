@@ -0,0 +1,124 @@
+package apps;
+
+import java.util.Random;
+
+/**
+ * Measures the time per evaluation of an expression in each evaluation mode: float (the
+ * default), long (for integer expressions) and double. The symbols of the expression get
+ * random values, with arrays of a given length whose elements are valid subscripts, so
+ * any expression can be timed without a symbols file.
+ *
+ * Usage: java apps.ExpressionBenchmark [-length n] [-iterations n] expression...
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class ExpressionBenchmark {
+
+	/**
+	 * Number of timed rounds per mode; the best one is reported
+	 */
+	static final int ROUNDS = 5;
+
+	/**
+	 * Keeps the results alive, so the evaluations are not optimized away
+	 */
+	static double sink;
+
+	public static void main(String[] args) {
+		int length = 1024;
+		int iterations = 1000000;
+		int i = 0;
+		while (i < args.length && args[i].startsWith("-")) {
+			if (args[i].equals("-length") && i+1 < args.length) {
+				length = Integer.parseInt(args[i+1]);
+			} else if (args[i].equals("-iterations") && i+1 < args.length) {
+				iterations = Integer.parseInt(args[i+1]);
+			} else {
+				usage();
+				return;
+			}
+			i += 2;
+		}
+		if (i == args.length) {
+			usage();
+			return;
+		}
+		for (; i < args.length; i++) {
+			run(args[i], length, iterations);
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: java apps.ExpressionBenchmark [-length n] [-iterations n] expression...");
+	}
+
+	/**
+	 * Times one expression in every mode that applies to it, and prints the results.
+	 *
+	 * @param expr Expression
+	 * @param length Length of every array
+	 * @param iterations Evaluations per round
+	 */
+	static void run(String expr, int length, int iterations) {
+		CompiledExpression code = Expression.compiledCache.get(expr);
+		SymbolTable symbols = code.newSymbolTable();
+		Random random = new Random(42);
+		for (int s=0; s < symbols.numScalars(); s++) {
+			symbols.scalar(s).value = random.nextInt(length);
+		}
+		for (int s=0; s < symbols.numArrays(); s++) {
+			int[] values = new int[length];
+			for (int k=0; k < length; k++) {
+				values[k] = random.nextInt(length);
+			}
+			symbols.array(s).values = values;
+		}
+
+		System.out.println(expr + (code.isInteger() ? "  (integer)" : ""));
+		double floatTime = time(code, symbols, iterations, 'f');
+		System.out.printf("  float  %8.2f ns/eval  = %s%n", floatTime, code.evaluate(symbols));
+		if (code.isInteger()) {
+			double longTime = time(code, symbols, iterations, 'l');
+			System.out.printf("  long   %8.2f ns/eval  = %d  (%.2fx float)%n",
+					longTime, code.evaluateLong(symbols), floatTime/longTime);
+		}
+		double doubleTime = time(code, symbols, iterations, 'd');
+		System.out.printf("  double %8.2f ns/eval  = %s  (%.2fx float)%n",
+				doubleTime, code.evaluateDouble(symbols), floatTime/doubleTime);
+	}
+
+	/**
+	 * Evaluates an expression repeatedly in one mode, after a warm-up round.
+	 *
+	 * @param mode 'f' for float, 'l' for long, 'd' for double
+	 * @return Best time per evaluation over the rounds, in nanoseconds
+	 */
+	static double time(CompiledExpression code, SymbolTable symbols, int iterations, char mode) {
+		float[] freg = new float[code.size()];
+		long[] lreg = new long[code.size()];
+		double[] dreg = new double[code.size()];
+		double best = Double.MAX_VALUE;
+		for (int round=0; round <= ROUNDS; round++) {
+			double acc = 0;
+			long t0 = System.nanoTime();
+			switch (mode) {
+			case 'f':
+				for (int k=0; k < iterations; k++) acc += code.evaluate(symbols, freg);
+				break;
+			case 'l':
+				for (int k=0; k < iterations; k++) acc += code.evaluateLong(symbols, lreg);
+				break;
+			default:
+				for (int k=0; k < iterations; k++) acc += code.evaluateDouble(symbols, dreg);
+			}
+			long elapsed = System.nanoTime() - t0;
+			sink += acc;
+			if (round > 0) {
+				// round 0 is the warm-up
+				best = Math.min(best, (double)elapsed/iterations);
+			}
+		}
+		return best;
+	}
+}
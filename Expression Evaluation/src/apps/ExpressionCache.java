@@ -0,0 +1,187 @@
+package apps;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe cache of compiled and optimized expressions, keyed by expression
+ * text normalized so that differences in spacing do not matter. When the cache is full,
+ * the least recently used expression is evicted. A compiled expression never changes
+ * after it is built, so one cached copy can be evaluated by any number of threads at once,
+ * each with its own symbol table (see CompiledExpression.newSymbolTable and bind).
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class ExpressionCache {
+
+	/**
+	 * Maximum number of expressions kept
+	 */
+	private final int capacity;
+
+	/**
+	 * Cached expressions by normalized text, in least to most recently used order
+	 */
+	private final LinkedHashMap<String,CompiledExpression> map;
+
+	/**
+	 * Number of lookups that found the expression in the cache
+	 */
+	private long hits;
+
+	/**
+	 * Number of lookups that had to compile the expression
+	 */
+	private long misses;
+
+	/**
+	 * Number of expressions evicted
+	 */
+	private long evictions;
+
+	/**
+	 * Total instructions of the expressions compiled by this cache, before optimization
+	 */
+	private long instructionsBefore;
+
+	/**
+	 * Total instructions of the expressions compiled by this cache, after optimization
+	 */
+	private long instructionsAfter;
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param capacity Maximum number of expressions kept
+	 */
+	public ExpressionCache(int capacity) {
+		this.capacity = capacity;
+		map = new LinkedHashMap<String,CompiledExpression>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String,CompiledExpression> eldest) {
+				if (size() > ExpressionCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the compiled form of an expression, compiling it if it is not in the cache.
+	 *
+	 * @param expr Expression text
+	 * @return Compiled, optimized expression
+	 * @throws IllegalArgumentException If the expression is malformed
+	 */
+	public CompiledExpression get(String expr) {
+		return get(new Lexer(expr));
+	}
+
+	/**
+	 * Returns the compiled form of a tokenized expression, compiling it if it is not in
+	 * the cache.
+	 *
+	 * @param tokens Tokens of the expression
+	 * @return Compiled, optimized expression
+	 * @throws IllegalArgumentException If the expression is malformed
+	 */
+	public CompiledExpression get(Lexer tokens) {
+		String key = tokens.normalized();
+		synchronized (this) {
+			CompiledExpression code = map.get(key);
+			if (code != null) {
+				hits++;
+				return code;
+			}
+			misses++;
+		}
+		// compile outside the lock, so that other lookups are not held up
+		CompiledExpression code = new ExpressionOptimizer().optimize(
+				CompiledExpression.compile(tokens, new SymbolTable()));
+		synchronized (this) {
+			CompiledExpression other = map.get(key);
+			if (other != null) {
+				return other;
+			}
+			map.put(key, code);
+			instructionsBefore += code.unoptimizedSize;
+			instructionsAfter += code.size;
+		}
+		return code;
+	}
+
+	/**
+	 * Returns the number of lookups that found the expression in the cache.
+	 *
+	 * @return Number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that had to compile the expression.
+	 *
+	 * @return Number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of expressions evicted to make room for others.
+	 *
+	 * @return Number of evictions
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the total number of instructions of the expressions this cache has
+	 * compiled, before they were optimized.
+	 *
+	 * @return Instructions before optimization
+	 */
+	public synchronized long instructionsBefore() {
+		return instructionsBefore;
+	}
+
+	/**
+	 * Returns the total number of instructions of the expressions this cache has
+	 * compiled, after they were optimized.
+	 *
+	 * @return Instructions after optimization
+	 */
+	public synchronized long instructionsAfter() {
+		return instructionsAfter;
+	}
+
+	/**
+	 * Returns the number of expressions in the cache.
+	 *
+	 * @return Number of cached expressions
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * Empties the cache. The counters are not reset.
+	 */
+	public synchronized void clear() {
+		map.clear();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return "size=" + map.size() + " hits=" + hits + " misses=" + misses +
+				" evictions=" + evictions + " instructions before/after optimization=" +
+				instructionsBefore + "/" + instructionsAfter;
+	}
+}
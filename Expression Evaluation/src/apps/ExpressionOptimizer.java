@@ -0,0 +1,296 @@
+package apps;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Rewrites a compiled expression into an equivalent one with fewer instructions. In one
+ * pass over the instructions it
+ * <ul>
+ * <li>folds operators whose operands are all constants into a single constant,</li>
+ * <li>simplifies identities: x-0, x*1, 1*x and x/1 become x, and -(-x) becomes x (x+0
+ *     and 0-x are left alone, because they turn -0 into 0),</li>
+ * <li>merges identical subexpressions, such as two occurrences of a[i+1]*b or of sum(a),
+ *     into one instruction whose value is shared by every use (+ and * are matched
+ *     regardless of operand order).</li>
+ * </ul>
+ * Instructions that are no longer used are then dropped. Multiplication by zero is not
+ * folded, because 0*x is NaN when x is infinite or NaN. Constants are folded twice: in
+ * double precision, which is what evaluateDouble sees, and in float arithmetic, rounding
+ * to float after every step, which is what evaluate sees. Whole numbers are not folded
+ * past 2^53, where double would no longer match the exact evaluateLong. So an optimized
+ * expression evaluates to exactly what the original did, in every mode.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class ExpressionOptimizer {
+
+	/**
+	 * Smallest whole number above which not every long is a double
+	 */
+	static final double TWO_53 = 9007199254740992.0;
+
+	/**
+	 * Number of instructions in the last expression given to optimize
+	 */
+	public int nodesBefore;
+
+	/**
+	 * Number of instructions in the last expression returned by optimize
+	 */
+	public int nodesAfter;
+
+	/**
+	 * Returns an optimized copy of a compiled expression, and records the instruction
+	 * counts before and after in nodesBefore and nodesAfter. The count before is also kept
+	 * in the copy (see CompiledExpression.unoptimizedSize).
+	 *
+	 * @param code Compiled expression; it is not changed
+	 * @return Optimized expression, using the same symbol table slots
+	 */
+	public CompiledExpression optimize(CompiledExpression code) {
+		int[] results = new int[1];
+		return merge(new CompiledExpression[] {code}, results);
+	}
+
+	/**
+	 * Merges several compiled expressions into a single optimized instruction list, in
+	 * which a subexpression that occurs in more than one of them is computed only once.
+	 * Evaluating the merged list (see CompiledExpression.evaluate(SymbolTable, float[]))
+	 * computes every expression; the value of expression k is in the instruction
+	 * results[k]. Records the total instruction counts before and after in nodesBefore
+	 * and nodesAfter. An empty batch gives an empty instruction list with no symbols.
+	 *
+	 * @param codes Compiled expressions, all compiled against the same symbol table; they
+	 *        are not changed; there may be none
+	 * @param results Receives the instruction that computes each expression
+	 * @return Merged expression, using the slots of the shared symbol table
+	 */
+	public CompiledExpression merge(CompiledExpression[] codes, int[] results) {
+		CompiledExpression out = new CompiledExpression();
+		HashMap<Long,Integer> seen = new HashMap<Long,Integer>();
+		HashMap<List<Double>,Integer> constants = new HashMap<List<Double>,Integer>();
+		HashMap<List<Integer>,Integer> aggregates = new HashMap<List<Integer>,Integer>();
+		nodesBefore = 0;
+		for (int k=0; k < codes.length; k++) {
+			results[k] = copy(codes[k], out, seen, constants, aggregates);
+			nodesBefore += codes[k].size;
+		}
+		out = removeUnused(out, results);
+		// the symbol table only grows, so the expression compiled last has every name
+		out.scalarNames = new String[0];
+		out.arrayNames = new String[0];
+		for (CompiledExpression code : codes) {
+			if (code.scalarNames.length + code.arrayNames.length >=
+					out.scalarNames.length + out.arrayNames.length) {
+				out.scalarNames = code.scalarNames;
+				out.arrayNames = code.arrayNames;
+			}
+		}
+		out.integer = out.typeCheck();
+		out.unoptimizedSize = nodesBefore;
+		nodesAfter = out.size;
+		return out;
+	}
+
+	/**
+	 * Rewrites the instructions of one expression into out, folding, simplifying and
+	 * reusing the instructions already in out.
+	 *
+	 * @return Instruction of out that computes the expression
+	 */
+	private static int copy(CompiledExpression code, CompiledExpression out,
+			HashMap<Long,Integer> seen, HashMap<List<Double>,Integer> constants,
+			HashMap<List<Integer>,Integer> aggregates) {
+		int[] map = new int[code.size];
+		for (int i=0; i < code.size; i++) {
+			int op = code.op[i];
+			switch (op) {
+			case CompiledExpression.CONST:
+				map[i] = constant(out, constants, code.constant[i], code.single[i]);
+				break;
+			case CompiledExpression.SCALAR:
+				map[i] = emit(out, seen, op, code.a[i], 0);
+				break;
+			case CompiledExpression.ARRAY:
+				map[i] = emit(out, seen, op, code.a[i], map[code.b[i]]);
+				break;
+			case CompiledExpression.RANGE:
+				map[i] = emit(out, seen, op, map[code.a[i]], map[code.b[i]]);
+				break;
+			case CompiledExpression.SUM: case CompiledExpression.MIN:
+			case CompiledExpression.MAX: case CompiledExpression.DOT: {
+				int r = code.range[i] < 0 ? -1 : map[code.range[i]];
+				List<Integer> key = Arrays.asList(op, code.a[i], code.b[i], r);
+				Integer same = aggregates.get(key);
+				if (same == null) {
+					same = out.emitAggregate(op, code.a[i], code.b[i], r);
+					aggregates.put(key, same);
+				}
+				map[i] = same;
+				break;
+			}
+			case CompiledExpression.NEG: {
+				int x = map[code.a[i]];
+				if (out.op[x] == CompiledExpression.CONST) {
+					map[i] = constant(out, constants, -out.constant[x], -out.single[x]);
+				} else if (out.op[x] == CompiledExpression.NEG) {
+					map[i] = out.a[x];
+				} else {
+					map[i] = emit(out, seen, op, x, 0);
+				}
+				break;
+			}
+			default:
+				map[i] = binary(out, seen, constants, op, map[code.a[i]], map[code.b[i]]);
+			}
+		}
+		return map[code.size-1];
+	}
+
+	/**
+	 * Emits a binary operator, folding or simplifying it if possible.
+	 */
+	private static int binary(CompiledExpression out, HashMap<Long,Integer> seen,
+			HashMap<List<Double>,Integer> constants, int op, int x, int y) {
+		boolean xc = out.op[x] == CompiledExpression.CONST;
+		boolean yc = out.op[y] == CompiledExpression.CONST;
+		double xv = out.constant[x], yv = out.constant[y];
+		float xs = out.single[x], ys = out.single[y];
+		if (xc && yc) {
+			double v = CompiledExpression.apply(op, xv, yv);
+			// evaluateLong computes whole numbers exactly, which double cannot beyond 2^53
+			if (!(xv == Math.rint(xv) && yv == Math.rint(yv) && Math.abs(v) >= TWO_53)) {
+				return constant(out, constants, v, CompiledExpression.apply(op, xs, ys));
+			}
+		}
+		// an identity applies only if it holds in both precisions
+		// x-0 is x only for +0, since x-(-0) turns -0 into 0
+		boolean y0 = yc && Double.doubleToRawLongBits(yv) == 0 && Float.floatToRawIntBits(ys) == 0;
+		boolean x1 = xc && xv == 1 && xs == 1, y1 = yc && yv == 1 && ys == 1;
+		switch (op) {
+		case CompiledExpression.SUB:
+			if (y0) return x;
+			break;
+		case CompiledExpression.MUL:
+			if (y1) return x;
+			if (x1) return y;
+			break;
+		case CompiledExpression.DIV:
+			if (y1) return x;
+			break;
+		}
+		if ((op == CompiledExpression.ADD || op == CompiledExpression.MUL) && x > y) {
+			int t = x; x = y; y = t;
+		}
+		return emit(out, seen, op, x, y);
+	}
+
+	/**
+	 * Emits a constant, or returns the instruction that already holds it.
+	 */
+	private static int constant(CompiledExpression out, HashMap<List<Double>,Integer> constants,
+			double c, float f) {
+		List<Double> key = Arrays.asList(c, (double)f);
+		Integer i = constants.get(key);
+		if (i != null) {
+			return i;
+		}
+		int n = out.emit(CompiledExpression.CONST, 0, 0, c, f);
+		constants.put(key, n);
+		return n;
+	}
+
+	/**
+	 * Emits an instruction, or returns the identical instruction emitted earlier.
+	 */
+	private static int emit(CompiledExpression out, HashMap<Long,Integer> seen, int op, int x, int y) {
+		Long key = ((long)op << 58) | ((long)x << 29) | y;
+		Integer i = seen.get(key);
+		if (i != null) {
+			return i;
+		}
+		int n = out.emit(op, x, y, 0);
+		seen.put(key, n);
+		return n;
+	}
+
+	/**
+	 * Drops the instructions that none of the results depend on. With a single result,
+	 * the result instruction becomes the last one.
+	 *
+	 * @param code Compiled expression
+	 * @param results Instructions that compute the results; they are renumbered to
+	 *        their places in the copy
+	 * @return Compacted copy
+	 */
+	private static CompiledExpression removeUnused(CompiledExpression code, int[] results) {
+		boolean[] used = new boolean[code.size];
+		// -1 if there are no results, so nothing is kept
+		int last = -1;
+		for (int r : results) {
+			used[r] = true;
+			last = Math.max(last, r);
+		}
+		for (int i=last; i >= 0; i--) {
+			if (!used[i]) {
+				continue;
+			}
+			switch (code.op[i]) {
+			case CompiledExpression.CONST:
+			case CompiledExpression.SCALAR:
+				break;
+			case CompiledExpression.ARRAY:
+				used[code.b[i]] = true;
+				break;
+			case CompiledExpression.NEG:
+				used[code.a[i]] = true;
+				break;
+			case CompiledExpression.SUM: case CompiledExpression.MIN:
+			case CompiledExpression.MAX: case CompiledExpression.DOT:
+				if (code.range[i] >= 0) {
+					used[code.range[i]] = true;
+				}
+				break;
+			default:
+				used[code.a[i]] = true;
+				used[code.b[i]] = true;
+			}
+		}
+		CompiledExpression out = new CompiledExpression();
+		int[] map = new int[code.size];
+		for (int i=0; i <= last; i++) {
+			if (!used[i]) {
+				continue;
+			}
+			int op = code.op[i];
+			int x = code.a[i], y = code.b[i];
+			switch (op) {
+			case CompiledExpression.CONST:
+			case CompiledExpression.SCALAR:
+				break;
+			case CompiledExpression.ARRAY:
+				y = map[y];
+				break;
+			case CompiledExpression.NEG:
+				x = map[x];
+				break;
+			case CompiledExpression.SUM: case CompiledExpression.MIN:
+			case CompiledExpression.MAX: case CompiledExpression.DOT:
+				int r = code.range[i];
+				map[i] = out.emitAggregate(op, x, y, r < 0 ? -1 : map[r]);
+				continue;
+			default:
+				x = map[x];
+				y = map[y];
+			}
+			map[i] = out.emit(op, x, y, code.constant[i], code.single[i]);
+		}
+		for (int k=0; k < results.length; k++) {
+			results[k] = map[results[k]];
+		}
+		return out;
+	}
+}
@@ -0,0 +1,384 @@
+package apps;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Instrumented evaluation of a compiled expression, for finding out which subexpression or
+ * which symbol makes a formula slow. Every evaluation through the profiler records, for each
+ * instruction, how many times it ran, how long it took, and how often it produced the same
+ * value as on the previous evaluation (a high repeat rate means the subexpression could be
+ * cached or updated incrementally, see IncrementalEvaluator). It also counts the reads of
+ * each scalar and array symbol, and for arrays how many reads were at or next to the
+ * previous subscript.
+ *
+ * Profiling is opt-in: CompiledExpression.evaluate is not instrumented, so nothing is
+ * spent when no profiler is used. Timing each instruction costs two clock reads, so the
+ * times are useful to compare instructions with each other, not as absolute numbers.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class ExpressionProfiler {
+
+	/**
+	 * Names of the aggregate functions, in opcode order from SUM
+	 */
+	static final String[] FUNCTIONS = {"sum", "min", "max", "dot"};
+
+	/**
+	 * Expression being profiled
+	 */
+	CompiledExpression code;
+
+	/**
+	 * Value of each instruction in the last evaluation
+	 */
+	float[] reg;
+
+	/**
+	 * Number of times each instruction was computed
+	 */
+	long[] count;
+
+	/**
+	 * Time spent computing each instruction, in nanoseconds
+	 */
+	long[] nanos;
+
+	/**
+	 * Number of times each instruction computed the same value as in the previous evaluation
+	 */
+	long[] repeats;
+
+	/**
+	 * Number of reads of each scalar slot
+	 */
+	long[] scalarReads;
+
+	/**
+	 * Number of reads of each array slot
+	 */
+	long[] arrayReads;
+
+	/**
+	 * Number of reads of each array slot at a subscript within one of the previous read
+	 */
+	long[] arrayNearReads;
+
+	/**
+	 * Subscript of the last read of each array slot
+	 */
+	int[] lastIndex;
+
+	/**
+	 * Number of evaluations
+	 */
+	long evaluations;
+
+	/**
+	 * Initializes a profiler with all counters at zero.
+	 *
+	 * @param code Compiled expression to profile
+	 */
+	public ExpressionProfiler(CompiledExpression code) {
+		this.code = code;
+		reg = new float[code.size];
+		count = new long[code.size];
+		nanos = new long[code.size];
+		repeats = new long[code.size];
+		scalarReads = new long[code.scalarNames.length];
+		arrayReads = new long[code.arrayNames.length];
+		arrayNearReads = new long[code.arrayNames.length];
+		lastIndex = new int[code.arrayNames.length];
+		Arrays.fill(lastIndex, Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Evaluates the expression, recording every instruction and symbol access.
+	 *
+	 * @param symbols Symbol table, with the slot layout of the expression
+	 * @return Value of the expression, the same as CompiledExpression.evaluate
+	 */
+	public float evaluate(SymbolTable symbols) {
+		for (int i=0; i < code.size; i++) {
+			long t0 = System.nanoTime();
+			float v = code.compute(i, reg, symbols);
+			nanos[i] += System.nanoTime() - t0;
+			if (evaluations > 0 && Float.floatToIntBits(v) == Float.floatToIntBits(reg[i])) {
+				repeats[i]++;
+			}
+			count[i]++;
+			reg[i] = v;
+			switch (code.op[i]) {
+			case CompiledExpression.SCALAR:
+				scalarReads[code.a[i]]++;
+				break;
+			case CompiledExpression.ARRAY: {
+				int slot = code.a[i];
+				int index = (int)reg[code.b[i]];
+				arrayReads[slot]++;
+				if (lastIndex[slot] != Integer.MIN_VALUE && Math.abs((long)index - lastIndex[slot]) <= 1) {
+					arrayNearReads[slot]++;
+				}
+				lastIndex[slot] = index;
+				break;
+			}
+			case CompiledExpression.SUM: case CompiledExpression.MIN:
+			case CompiledExpression.MAX: case CompiledExpression.DOT: {
+				int r = code.range[i];
+				int slot = code.a[i];
+				long n = r < 0 ? symbols.arrays.get(slot).length() :
+					(long)reg[code.b[r]] - (long)reg[code.a[r]];
+				arrayReads[slot] += n;
+				if (code.op[i] == CompiledExpression.DOT) {
+					arrayReads[code.b[i]] += n;
+				}
+				break;
+			}
+			}
+		}
+		evaluations++;
+		return reg[code.size-1];
+	}
+
+	/**
+	 * Sets all counters back to zero.
+	 */
+	public void reset() {
+		Arrays.fill(count, 0);
+		Arrays.fill(nanos, 0);
+		Arrays.fill(repeats, 0);
+		Arrays.fill(scalarReads, 0);
+		Arrays.fill(arrayReads, 0);
+		Arrays.fill(arrayNearReads, 0);
+		Arrays.fill(lastIndex, Integer.MIN_VALUE);
+		evaluations = 0;
+	}
+
+	/**
+	 * Returns the number of profiled evaluations.
+	 *
+	 * @return Number of evaluations
+	 */
+	public long evaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Returns the number of instructions (subexpressions) of the profiled expression.
+	 *
+	 * @return Number of instructions
+	 */
+	public int size() {
+		return code.size;
+	}
+
+	/**
+	 * Returns the text of the subexpression computed by an instruction.
+	 *
+	 * @param i Instruction number
+	 * @return Subexpression, fully parenthesized
+	 */
+	public String subexpression(int i) {
+		StringBuilder sb = new StringBuilder();
+		describe(i, sb);
+		return sb.toString();
+	}
+
+	private void describe(int i, StringBuilder sb) {
+		switch (code.op[i]) {
+		case CompiledExpression.CONST:
+			double c = code.constant[i];
+			if (c == Math.rint(c) && Math.abs(c) < 1e15) {
+				sb.append((long)c);
+			} else {
+				sb.append(c);
+			}
+			break;
+		case CompiledExpression.SCALAR:
+			sb.append(code.scalarNames[code.a[i]]);
+			break;
+		case CompiledExpression.ARRAY:
+			sb.append(code.arrayNames[code.a[i]]).append('[');
+			describe(code.b[i], sb);
+			sb.append(']');
+			break;
+		case CompiledExpression.NEG:
+			sb.append('-');
+			describe(code.a[i], sb);
+			break;
+		case CompiledExpression.RANGE:
+			describe(code.a[i], sb);
+			sb.append(',');
+			describe(code.b[i], sb);
+			break;
+		case CompiledExpression.SUM: case CompiledExpression.MIN:
+		case CompiledExpression.MAX: case CompiledExpression.DOT:
+			sb.append(FUNCTIONS[code.op[i] - CompiledExpression.SUM]).append('(');
+			sb.append(code.arrayNames[code.a[i]]);
+			if (code.op[i] == CompiledExpression.DOT) {
+				sb.append(',').append(code.arrayNames[code.b[i]]);
+			}
+			if (code.range[i] >= 0) {
+				sb.append(',');
+				describe(code.range[i], sb);
+			}
+			sb.append(')');
+			break;
+		default:
+			sb.append('(');
+			describe(code.a[i], sb);
+			sb.append("+-*/".charAt(code.op[i] - CompiledExpression.ADD));
+			describe(code.b[i], sb);
+			sb.append(')');
+		}
+	}
+
+	/**
+	 * Returns the number of times an instruction was computed.
+	 *
+	 * @param i Instruction number
+	 * @return Count
+	 */
+	public long count(int i) {
+		return count[i];
+	}
+
+	/**
+	 * Returns the time spent in an instruction itself, not counting its operands.
+	 *
+	 * @param i Instruction number
+	 * @return Time, in nanoseconds
+	 */
+	public long selfNanos(int i) {
+		return nanos[i];
+	}
+
+	/**
+	 * Returns the time spent in an instruction and every instruction it depends on. A
+	 * subexpression that is shared by several operands is counted once.
+	 *
+	 * @param i Instruction number
+	 * @return Time, in nanoseconds
+	 */
+	public long totalNanos(int i) {
+		boolean[] used = new boolean[i+1];
+		used[i] = true;
+		long total = 0;
+		for (int k=i; k >= 0; k--) {
+			if (!used[k]) {
+				continue;
+			}
+			total += nanos[k];
+			switch (code.op[k]) {
+			case CompiledExpression.CONST:
+			case CompiledExpression.SCALAR:
+				break;
+			case CompiledExpression.ARRAY:
+				used[code.b[k]] = true;
+				break;
+			case CompiledExpression.NEG:
+				used[code.a[k]] = true;
+				break;
+			case CompiledExpression.SUM: case CompiledExpression.MIN:
+			case CompiledExpression.MAX: case CompiledExpression.DOT:
+				if (code.range[k] >= 0) {
+					used[code.range[k]] = true;
+				}
+				break;
+			default:
+				used[code.a[k]] = true;
+				used[code.b[k]] = true;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the fraction of evaluations, after the first, in which an instruction
+	 * computed the same value as in the one before.
+	 *
+	 * @param i Instruction number
+	 * @return Repeat rate, between 0 and 1
+	 */
+	public double repeatRate(int i) {
+		return count[i] > 1 ? (double)repeats[i]/(count[i]-1) : 0;
+	}
+
+	/**
+	 * Returns the number of reads of a scalar symbol.
+	 *
+	 * @param name Name of the scalar
+	 * @return Number of reads, 0 if the expression has no such scalar
+	 */
+	public long scalarReads(String name) {
+		int slot = Arrays.asList(code.scalarNames).indexOf(name);
+		return slot == -1 ? 0 : scalarReads[slot];
+	}
+
+	/**
+	 * Returns the number of element reads of an array symbol.
+	 *
+	 * @param name Name of the array
+	 * @return Number of reads, 0 if the expression has no such array
+	 */
+	public long arrayReads(String name) {
+		int slot = Arrays.asList(code.arrayNames).indexOf(name);
+		return slot == -1 ? 0 : arrayReads[slot];
+	}
+
+	/**
+	 * Writes a report: one line per instruction with its count, self and total time,
+	 * repeat rate and subexpression, the instructions in decreasing order of self time;
+	 * then one line per symbol with its read count, the symbols in decreasing order of
+	 * reads.
+	 *
+	 * @param ps Stream for the report
+	 */
+	public void dump(PrintStream ps) {
+		ps.printf("%d evaluations, %d instructions (%d before optimization)%n", evaluations,
+				code.size, code.unoptimizedSize);
+		ps.printf("%5s %12s %12s %12s %7s  %s%n", "#", "count", "self ns", "total ns", "repeat", "subexpression");
+		Integer[] order = new Integer[code.size];
+		for (int i=0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer x, Integer y) {
+				return Long.compare(nanos[y], nanos[x]);
+			}
+		});
+		for (int i : order) {
+			ps.printf("%5d %12d %12d %12d %6.1f%%  %s%n", i, count[i], nanos[i], totalNanos(i),
+					100*repeatRate(i), subexpression(i));
+		}
+		ps.printf("%-20s %12s %12s%n", "symbol", "reads", "near reads");
+		Integer[] symbols = new Integer[scalarReads.length + arrayReads.length];
+		for (int s=0; s < symbols.length; s++) {
+			symbols[s] = s;
+		}
+		Arrays.sort(symbols, new Comparator<Integer>() {
+			public int compare(Integer x, Integer y) {
+				return Long.compare(reads(y), reads(x));
+			}
+		});
+		for (int s : symbols) {
+			if (s < scalarReads.length) {
+				ps.printf("%-20s %12d%n", code.scalarNames[s], scalarReads[s]);
+			} else {
+				int slot = s - scalarReads.length;
+				ps.printf("%-20s %12d %12d%n", code.arrayNames[slot] + "[]", arrayReads[slot],
+						arrayNearReads[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the reads of a symbol, numbering the scalars first and then the arrays.
+	 */
+	private long reads(int s) {
+		return s < scalarReads.length ? scalarReads[s] : arrayReads[s - scalarReads.length];
+	}
+}
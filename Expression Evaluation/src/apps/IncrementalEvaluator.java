@@ -0,0 +1,303 @@
+package apps;
+
+/**
+ * Keeps the value of every instruction of a compiled expression, and when a single symbol
+ * value changes, recomputes only the instructions that depend on it. Changes spread forward
+ * through the instructions that read the changed values, and stop at any instruction whose
+ * value comes out the same as before.
+ *
+ * Symbol values must be changed through setScalar and setArrayElement, so that the
+ * evaluator knows what changed; if they are changed directly, call refresh.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class IncrementalEvaluator {
+
+	/**
+	 * Expression being evaluated
+	 */
+	CompiledExpression code;
+
+	/**
+	 * Symbol table the expression was compiled against
+	 */
+	SymbolTable symbols;
+
+	/**
+	 * Current value of each instruction
+	 */
+	float[] reg;
+
+	/**
+	 * Instructions that read the value of each instruction
+	 */
+	int[][] users;
+
+	/**
+	 * SCALAR instructions for each scalar slot
+	 */
+	int[][] scalarReaders;
+
+	/**
+	 * ARRAY instructions for each array slot
+	 */
+	int[][] arrayReaders;
+
+	/**
+	 * Min-heap of instructions waiting to be recomputed; since an instruction only reads
+	 * earlier ones, taking the smallest first recomputes each at most once
+	 */
+	int[] heap;
+
+	/**
+	 * Number of instructions in the heap
+	 */
+	int heapSize;
+
+	/**
+	 * Marks the instructions that are in the heap
+	 */
+	boolean[] queued;
+
+	/**
+	 * Number of instructions recomputed by the last update
+	 */
+	public int recomputed;
+
+	/**
+	 * Initializes an incremental evaluator, and evaluates the whole expression once.
+	 *
+	 * @param code Compiled expression
+	 * @param symbols Symbol table the expression was compiled against
+	 */
+	public IncrementalEvaluator(CompiledExpression code, SymbolTable symbols) {
+		this.code = code;
+		this.symbols = symbols;
+		int size = code.size;
+		reg = new float[size];
+		heap = new int[size];
+		queued = new boolean[size];
+
+		int[] numUsers = new int[size];
+		int[] numScalarReaders = new int[symbols.numScalars()];
+		int[] numArrayReaders = new int[symbols.numArrays()];
+		for (int pass=0; pass < 2; pass++) {
+			if (pass == 1) {
+				users = allocate(numUsers);
+				scalarReaders = allocate(numScalarReaders);
+				arrayReaders = allocate(numArrayReaders);
+			}
+			for (int i=0; i < size; i++) {
+				switch (code.op[i]) {
+				case CompiledExpression.CONST:
+					break;
+				case CompiledExpression.SCALAR:
+					link(scalarReaders, numScalarReaders, code.a[i], i, pass);
+					break;
+				case CompiledExpression.ARRAY:
+					link(arrayReaders, numArrayReaders, code.a[i], i, pass);
+					link(users, numUsers, code.b[i], i, pass);
+					break;
+				case CompiledExpression.NEG:
+					link(users, numUsers, code.a[i], i, pass);
+					break;
+				case CompiledExpression.SUM: case CompiledExpression.MIN:
+				case CompiledExpression.MAX: case CompiledExpression.DOT:
+					link(arrayReaders, numArrayReaders, code.a[i], i, pass);
+					if (code.op[i] == CompiledExpression.DOT && code.b[i] != code.a[i]) {
+						link(arrayReaders, numArrayReaders, code.b[i], i, pass);
+					}
+					int r = code.range[i];
+					if (r >= 0) {
+						// the RANGE instruction has no value to compare, so the
+						// aggregate reads its bounds directly
+						link(users, numUsers, code.a[r], i, pass);
+						if (code.b[r] != code.a[r]) {
+							link(users, numUsers, code.b[r], i, pass);
+						}
+					}
+					break;
+				default:
+					link(users, numUsers, code.a[i], i, pass);
+					if (code.b[i] != code.a[i]) {
+						link(users, numUsers, code.b[i], i, pass);
+					}
+				}
+			}
+		}
+		refresh();
+	}
+
+	/**
+	 * Counts a dependency on the first pass, and records it on the second.
+	 */
+	private static void link(int[][] lists, int[] counts, int from, int to, int pass) {
+		if (pass == 0) {
+			counts[from]++;
+		} else {
+			lists[from][counts[from]++] = to;
+		}
+	}
+
+	/**
+	 * Allocates one list per entry with the counted length, and resets the counts.
+	 */
+	private static int[][] allocate(int[] counts) {
+		int[][] lists = new int[counts.length][];
+		for (int i=0; i < counts.length; i++) {
+			lists[i] = new int[counts[i]];
+			counts[i] = 0;
+		}
+		return lists;
+	}
+
+	/**
+	 * Returns the current value of the expression.
+	 *
+	 * @return Value of the expression
+	 */
+	public float value() {
+		return reg[code.size-1];
+	}
+
+	/**
+	 * Recomputes every instruction from the current symbol values.
+	 *
+	 * @return Value of the expression
+	 */
+	public float refresh() {
+		for (int i=0; i < code.size; i++) {
+			reg[i] = code.compute(i, reg, symbols);
+		}
+		recomputed = code.size;
+		return value();
+	}
+
+	/**
+	 * Changes the value of a scalar symbol, and updates the value of the expression.
+	 *
+	 * @param slot Slot of the scalar
+	 * @param value New value
+	 * @return New value of the expression
+	 */
+	public float setScalar(int slot, int value) {
+		symbols.scalar(slot).value = value;
+		for (int i : scalarReaders[slot]) {
+			enqueue(i);
+		}
+		return update();
+	}
+
+	/**
+	 * Changes the value of a scalar symbol, and updates the value of the expression.
+	 *
+	 * @param name Name of the scalar
+	 * @param value New value
+	 * @return New value of the expression
+	 * @throws IllegalArgumentException If there is no scalar with this name
+	 */
+	public float setScalar(String name, int value) {
+		int slot = symbols.scalarSlot(name);
+		if (slot == -1) {
+			throw new IllegalArgumentException("No scalar named " + name);
+		}
+		return setScalar(slot, value);
+	}
+
+	/**
+	 * Changes one element of an array symbol, and updates the value of the expression.
+	 * Only the subscripts that currently evaluate to the changed index are affected, and
+	 * the aggregates over the array, which are recomputed in full.
+	 *
+	 * @param slot Slot of the array
+	 * @param index Index of the element
+	 * @param value New value
+	 * @return New value of the expression
+	 */
+	public float setArrayElement(int slot, int index, int value) {
+		ArraySymbol as = symbols.array(slot);
+		if (as.values != null) {
+			as.values[index] = value;
+		} else {
+			as.storage.set(index, value);
+		}
+		for (int i : arrayReaders[slot]) {
+			if (code.op[i] != CompiledExpression.ARRAY || (int)reg[code.b[i]] == index) {
+				enqueue(i);
+			}
+		}
+		return update();
+	}
+
+	/**
+	 * Changes one element of an array symbol, and updates the value of the expression.
+	 *
+	 * @param name Name of the array
+	 * @param index Index of the element
+	 * @param value New value
+	 * @return New value of the expression
+	 * @throws IllegalArgumentException If there is no array with this name
+	 */
+	public float setArrayElement(String name, int index, int value) {
+		int slot = symbols.arraySlot(name);
+		if (slot == -1) {
+			throw new IllegalArgumentException("No array named " + name);
+		}
+		return setArrayElement(slot, index, value);
+	}
+
+	/**
+	 * Recomputes the queued instructions, and everything that reads a value that changed.
+	 *
+	 * @return New value of the expression
+	 */
+	private float update() {
+		recomputed = 0;
+		while (heapSize > 0) {
+			int i = dequeue();
+			float v = code.compute(i, reg, symbols);
+			recomputed++;
+			if (Float.floatToIntBits(v) != Float.floatToIntBits(reg[i])) {
+				reg[i] = v;
+				for (int u : users[i]) {
+					enqueue(u);
+				}
+			}
+		}
+		return value();
+	}
+
+	private void enqueue(int i) {
+		if (queued[i]) {
+			return;
+		}
+		queued[i] = true;
+		int k = heapSize++;
+		while (k > 0 && heap[(k-1)/2] > i) {
+			heap[k] = heap[(k-1)/2];
+			k = (k-1)/2;
+		}
+		heap[k] = i;
+	}
+
+	private int dequeue() {
+		int top = heap[0];
+		int last = heap[--heapSize];
+		int k = 0;
+		while (2*k+1 < heapSize) {
+			int c = 2*k+1;
+			if (c+1 < heapSize && heap[c+1] < heap[c]) {
+				c++;
+			}
+			if (heap[c] >= last) {
+				break;
+			}
+			heap[k] = heap[c];
+			k = c;
+		}
+		heap[k] = last;
+		queued[top] = false;
+		return top;
+	}
+}
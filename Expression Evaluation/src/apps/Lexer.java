@@ -0,0 +1,160 @@
+package apps;
+
+import java.util.Arrays;
+
+/**
+ * Splits an expression into tokens in a single left-to-right pass. The tokens are kept in
+ * parallel int arrays (kind, start and end position in the text), so a token stream costs
+ * three ints per token and no objects. The same stream is used to discover the symbols of
+ * an expression and to compile it.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class Lexer {
+
+	/**
+	 * Token kinds
+	 */
+	static final int NUMBER=0, NAME=1, PLUS=2, MINUS=3, TIMES=4, DIVIDE=5,
+			LPAREN=6, RPAREN=7, LBRACKET=8, RBRACKET=9, END=10, COMMA=11;
+
+	/**
+	 * Expression text
+	 */
+	String text;
+
+	/**
+	 * Kind of each token; the last token is always END
+	 */
+	int[] kind;
+
+	/**
+	 * Position in the text of the first character of each token
+	 */
+	int[] start;
+
+	/**
+	 * Position in the text just past the last character of each token
+	 */
+	int[] end;
+
+	/**
+	 * Number of tokens, including END
+	 */
+	int count;
+
+	/**
+	 * Tokenizes an expression. Spaces and tabs separate tokens and are otherwise ignored.
+	 *
+	 * @param text Expression text
+	 * @throws IllegalArgumentException If the text has a character that cannot start a token
+	 */
+	public Lexer(String text) {
+		this.text = text;
+		int capacity = 16;
+		kind = new int[capacity];
+		start = new int[capacity];
+		end = new int[capacity];
+		count = 0;
+		int n = text.length();
+		int pos = 0;
+		while (true) {
+			while (pos < n && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t')) {
+				pos++;
+			}
+			int from = pos;
+			int k;
+			if (pos == n) {
+				k = END;
+			} else {
+				char c = text.charAt(pos++);
+				if (Character.isDigit(c)) {
+					while (pos < n && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+						pos++;
+					}
+					k = NUMBER;
+				} else if (Character.isLetter(c)) {
+					while (pos < n && Character.isLetter(text.charAt(pos))) {
+						pos++;
+					}
+					k = NAME;
+				} else {
+					switch (c) {
+					case '+': k = PLUS; break;
+					case '-': k = MINUS; break;
+					case '*': k = TIMES; break;
+					case '/': k = DIVIDE; break;
+					case '(': k = LPAREN; break;
+					case ')': k = RPAREN; break;
+					case '[': k = LBRACKET; break;
+					case ']': k = RBRACKET; break;
+					case ',': k = COMMA; break;
+					default:
+						throw new IllegalArgumentException("Unexpected '" + c + "' at position " + from);
+					}
+				}
+			}
+			if (count == kind.length) {
+				kind = Arrays.copyOf(kind, 2*count);
+				start = Arrays.copyOf(start, 2*count);
+				end = Arrays.copyOf(end, 2*count);
+			}
+			kind[count] = k;
+			start[count] = from;
+			end[count] = pos;
+			count++;
+			if (k == END) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the text of a token.
+	 *
+	 * @param t Token number
+	 * @return Text of the token
+	 */
+	String text(int t) {
+		return text.substring(start[t], end[t]);
+	}
+
+	/**
+	 * Returns the tokens separated by single spaces. Two expressions that differ only in
+	 * spacing have the same normalized text.
+	 *
+	 * @return Normalized text
+	 */
+	public String normalized() {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int t=0; t < count-1; t++) {
+			if (t > 0) {
+				sb.append(' ');
+			}
+			sb.append(text, start[t], end[t]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Tells whether a NAME token names an array, that is, whether it is followed by '['.
+	 *
+	 * @param t Token number of a NAME
+	 * @return True if the name is an array name
+	 */
+	boolean isArrayName(int t) {
+		return kind[t+1] == LBRACKET;
+	}
+
+	/**
+	 * Tells whether a NAME token is a call of an aggregate function, that is, whether it is
+	 * followed by '('.
+	 *
+	 * @param t Token number of a NAME
+	 * @return True if the name is a function name
+	 */
+	boolean isCall(int t) {
+		return kind[t+1] == LPAREN;
+	}
+}
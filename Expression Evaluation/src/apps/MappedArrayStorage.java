@@ -0,0 +1,133 @@
+package apps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Array storage backed by a memory-mapped file, for arrays that are larger than the heap.
+ * Values are stored as little-endian ints. A single mapping cannot exceed 2GB, so the
+ * file is mapped in chunks of CHUNK ints.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class MappedArrayStorage implements ArrayStorage {
+
+	/**
+	 * log2 of the number of ints in one mapped chunk
+	 */
+	static final int SHIFT = 28;
+
+	/**
+	 * Number of ints in one mapped chunk (1GB)
+	 */
+	static final int CHUNK = 1 << SHIFT;
+
+	/**
+	 * Length of the array
+	 */
+	private int length;
+
+	/**
+	 * Mapped chunks of the array
+	 */
+	private IntBuffer[] chunks;
+
+	/**
+	 * Temporary file that holds the array, or null if the file is not owned by this storage
+	 */
+	private File temp;
+
+	/**
+	 * Maps an array of ints that is stored in a file.
+	 *
+	 * @param channel Open channel of the file; it can be closed once this constructor returns
+	 * @param offset Byte offset of the first value in the file
+	 * @param length Number of values
+	 * @param writable True to map the file for writing, false to map it read-only
+	 * @throws IOException If the file cannot be mapped
+	 */
+	public MappedArrayStorage(FileChannel channel, long offset, int length, boolean writable)
+	throws IOException {
+		this.length = length;
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		chunks = new IntBuffer[Math.max(1, (int)(((long)length + CHUNK - 1) >> SHIFT))];
+		for (int c=0; c < chunks.length; c++) {
+			long first = (long)c << SHIFT;
+			long n = Math.min(CHUNK, length - first);
+			chunks[c] = channel.map(mode, offset + 4*first, 4*n)
+					.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		}
+	}
+
+	/**
+	 * Creates a zero-filled array in a new temporary file, which is deleted when the
+	 * program exits.
+	 *
+	 * @param length Number of values
+	 * @return Storage mapped onto the temporary file
+	 * @throws IOException If the file cannot be created or mapped
+	 */
+	public static MappedArrayStorage createTemp(int length)
+	throws IOException {
+		File file = File.createTempFile("array", ".bin");
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(4L*length);
+			MappedArrayStorage storage = new MappedArrayStorage(raf.getChannel(), 0, length, true);
+			storage.temp = file;
+			return storage;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Drops the mapping of a storage made by createTemp, and deletes its file. The storage
+	 * must not be used afterwards. Where a mapped file cannot be deleted, it is still
+	 * deleted when the program exits.
+	 */
+	public void delete() {
+		chunks = null;
+		release();
+	}
+
+	/**
+	 * Deletes the temporary file of a storage made by createTemp that is being replaced,
+	 * but leaves it mapped, so a table that shares the storage (see SymbolTable.bind) can
+	 * still read it; its space is freed once the mapping is garbage collected. Where a
+	 * mapped file cannot be deleted, it is still deleted when the program exits.
+	 */
+	public void release() {
+		if (temp != null) {
+			temp.delete();
+			temp = null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see apps.ArrayStorage#get(int)
+	 */
+	public int get(int index) {
+		return chunks[index >>> SHIFT].get(index & (CHUNK-1));
+	}
+
+	/* (non-Javadoc)
+	 * @see apps.ArrayStorage#set(int, int)
+	 */
+	public void set(int index, int value) {
+		chunks[index >>> SHIFT].put(index & (CHUNK-1), value);
+	}
+
+	/* (non-Javadoc)
+	 * @see apps.ArrayStorage#length()
+	 */
+	public int length() {
+		return length;
+	}
+}
@@ -0,0 +1,122 @@
+package apps;
+
+/**
+ * A batch of expressions evaluated together against the same symbol values. The
+ * expressions are compiled against one shared symbol table, holding every symbol of every
+ * expression, and merged into a single instruction list (see ExpressionOptimizer.merge), so
+ * a subexpression such as rate*base or w[k] that occurs in many expressions is computed
+ * once per evaluation, and its value is read by all of them.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class MultiExpression {
+
+	/**
+	 * Merged instructions of all the expressions
+	 */
+	CompiledExpression code;
+
+	/**
+	 * Instruction that computes each expression
+	 */
+	int[] results;
+
+	/**
+	 * Number of instructions the expressions would have had if compiled one by one
+	 */
+	int separateSize;
+
+	/**
+	 * Compiles and merges a batch of expressions.
+	 *
+	 * @param exprs Expressions
+	 * @throws IllegalArgumentException If an expression is malformed; the message says
+	 *         which one
+	 */
+	public MultiExpression(String[] exprs) {
+		SymbolTable symbols = new SymbolTable();
+		CompiledExpression[] codes = new CompiledExpression[exprs.length];
+		ExpressionOptimizer optimizer = new ExpressionOptimizer();
+		for (int k=0; k < exprs.length; k++) {
+			try {
+				codes[k] = CompiledExpression.compile(exprs[k], symbols);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Expression " + (k+1) + ": " + e.getMessage(), e);
+			}
+			separateSize += optimizer.optimize(codes[k]).size;
+		}
+		results = new int[exprs.length];
+		code = optimizer.merge(codes, results);
+	}
+
+	/**
+	 * Returns the number of expressions.
+	 *
+	 * @return Number of expressions
+	 */
+	public int size() {
+		return results.length;
+	}
+
+	/**
+	 * Returns the merged instructions. Their symbol table layout is shared by all the
+	 * expressions, so a table for evaluate is made with code().newSymbolTable() or
+	 * code().bind(source).
+	 *
+	 * @return Merged expression
+	 */
+	public CompiledExpression code() {
+		return code;
+	}
+
+	/**
+	 * Returns the number of instructions per evaluation of the whole batch, to compare
+	 * with separateSize.
+	 *
+	 * @return Number of merged instructions
+	 */
+	public int mergedSize() {
+		return code.size;
+	}
+
+	/**
+	 * Returns the number of instructions per evaluation if every expression was
+	 * evaluated on its own.
+	 *
+	 * @return Total instructions of the separately optimized expressions
+	 */
+	public int separateSize() {
+		return separateSize;
+	}
+
+	/**
+	 * Evaluates every expression against a set of symbol values.
+	 *
+	 * @param symbols Symbol table with the layout of code()
+	 * @return Value of each expression
+	 */
+	public float[] evaluate(SymbolTable symbols) {
+		float[] values = new float[results.length];
+		evaluate(symbols, new float[code.size], values);
+		return values;
+	}
+
+	/**
+	 * Evaluates every expression, using scratch space supplied by the caller, so that
+	 * nothing is allocated.
+	 *
+	 * @param symbols Symbol table with the layout of code()
+	 * @param reg Scratch space of at least mergedSize() floats
+	 * @param values Receives the value of each expression
+	 */
+	public void evaluate(SymbolTable symbols, float[] reg, float[] values) {
+		if (results.length == 0) {
+			return;
+		}
+		code.evaluate(symbols, reg);
+		for (int k=0; k < results.length; k++) {
+			values[k] = reg[results[k]];
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package apps;
+
+import java.util.Arrays;
+
+/**
+ * Array storage that keeps only the elements that have been set, in an open-addressing
+ * hash table of primitive (index, value) pairs. Memory use depends on the number of
+ * elements set, not on the declared length.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class SparseArrayStorage implements ArrayStorage {
+
+	/**
+	 * Marks an empty entry in the keys array
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * Declared length of the array
+	 */
+	private int length;
+
+	/**
+	 * Index stored in each entry, or EMPTY
+	 */
+	private int[] keys;
+
+	/**
+	 * Value stored in each entry
+	 */
+	private int[] vals;
+
+	/**
+	 * Number of entries in use
+	 */
+	private int count;
+
+	/**
+	 * Initializes an empty sparse array.
+	 *
+	 * @param length Declared length of the array
+	 * @param expected Number of elements expected to be set
+	 */
+	public SparseArrayStorage(int length, int expected) {
+		this.length = length;
+		int capacity = 16;
+		while (capacity < 2*expected) {
+			capacity *= 2;
+		}
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		vals = new int[capacity];
+		count = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see apps.ArrayStorage#get(int)
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= length) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		int mask = keys.length-1;
+		int i = hash(index) & mask;
+		while (true) {
+			int k = keys[i];
+			if (k == index) {
+				return vals[i];
+			}
+			if (k == EMPTY) {
+				return 0;
+			}
+			i = (i+1) & mask;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see apps.ArrayStorage#set(int, int)
+	 */
+	public void set(int index, int value) {
+		if (index < 0 || index >= length) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		if (2*(count+1) > keys.length) {
+			grow();
+		}
+		int mask = keys.length-1;
+		int i = hash(index) & mask;
+		while (keys[i] != EMPTY && keys[i] != index) {
+			i = (i+1) & mask;
+		}
+		if (keys[i] == EMPTY) {
+			keys[i] = index;
+			count++;
+		}
+		vals[i] = value;
+	}
+
+	/* (non-Javadoc)
+	 * @see apps.ArrayStorage#length()
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of elements that have been set.
+	 *
+	 * @return Number of elements set
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Copies the elements that have been set, in no particular order.
+	 *
+	 * @param indexes Receives the index of each element; at least count() long
+	 * @param values Receives the value of each element; at least count() long
+	 */
+	void entries(int[] indexes, int[] values) {
+		int n = 0;
+		for (int j=0; j < keys.length; j++) {
+			if (keys[j] != EMPTY) {
+				indexes[n] = keys[j];
+				values[n] = vals[j];
+				n++;
+			}
+		}
+	}
+
+	/**
+	 * Doubles the table and re-inserts all entries.
+	 */
+	private void grow() {
+		int[] oldKeys = keys, oldVals = vals;
+		keys = new int[oldKeys.length*2];
+		Arrays.fill(keys, EMPTY);
+		vals = new int[oldVals.length*2];
+		int mask = keys.length-1;
+		for (int j=0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != EMPTY) {
+				int i = hash(oldKeys[j]) & mask;
+				while (keys[i] != EMPTY) {
+					i = (i+1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				vals[i] = oldVals[j];
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of an index, so that runs of consecutive indexes do not cluster.
+	 *
+	 * @param index Index
+	 * @return Hash code
+	 */
+	private static int hash(int index) {
+		int h = index * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,488 @@
+package apps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Loads a symbol values file (same format as SymbolTable.load) by memory-mapping it and
+ * parsing the bytes directly, without building a String per line or per token. The file
+ * is cut into chunks that end on line boundaries, and the chunks are parsed in parallel.
+ * Values are stored in the symbol table in file order, so if a symbol appears on more
+ * than one line the last line wins, as with SymbolTable.load.
+ *
+ * A line that cannot be parsed is skipped and reported, with its byte offset, instead of
+ * stopping the load. A huge array that was being parsed into a temporary mapped file
+ * when the problem was found has its file deleted.
+ *
+ * A loader can also declare the symbols it finds that are not in the table, as
+ * SymbolTable.loadAll does: a line with a single value declares a scalar, and a line with
+ * (index,val) pairs declares an array.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class SymbolFileLoader {
+
+	/**
+	 * Nominal size of a chunk, in bytes
+	 */
+	static final long CHUNK = 32L << 20;
+
+	/**
+	 * A line of the input that could not be parsed.
+	 */
+	public static class MalformedLine {
+
+		/**
+		 * Byte offset in the file at which the problem was found
+		 */
+		public long offset;
+
+		/**
+		 * Description of the problem, followed by the start of the line
+		 */
+		public String message;
+
+		/**
+		 * Initializes a report of a malformed line.
+		 *
+		 * @param offset Byte offset of the problem
+		 * @param message Description of the problem
+		 */
+		public MalformedLine(long offset, String message) {
+			this.offset = offset;
+			this.message = message;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return "offset " + offset + ": " + message;
+		}
+	}
+
+	/**
+	 * Symbol table that receives the values
+	 */
+	SymbolTable symbols;
+
+	/**
+	 * Bytes of each symbol name in the table
+	 */
+	byte[][] names;
+
+	/**
+	 * Scalar slot of each name, or -1
+	 */
+	int[] scalarSlot;
+
+	/**
+	 * Array slot of each name, or -1
+	 */
+	int[] arraySlot;
+
+	/**
+	 * Open-addressing hash table of name numbers plus one; 0 is an empty entry
+	 */
+	int[] nameTable;
+
+	/**
+	 * True to add the symbols that are not in the table, false to skip their lines
+	 */
+	boolean declare;
+
+	/**
+	 * Initializes a loader for a symbol table. Only the symbols in the table when the
+	 * loader is created are loaded; lines for other names are skipped.
+	 *
+	 * @param symbols Symbol table that receives the values
+	 */
+	public SymbolFileLoader(SymbolTable symbols) {
+		this(symbols, false);
+	}
+
+	/**
+	 * Initializes a loader for a symbol table that optionally declares the symbols that
+	 * are not in the table.
+	 *
+	 * @param symbols Symbol table that receives the values
+	 * @param declare True to add unknown symbols, false to skip their lines
+	 */
+	public SymbolFileLoader(SymbolTable symbols, boolean declare) {
+		this.symbols = symbols;
+		this.declare = declare;
+		ArrayList<String> all = new ArrayList<String>(symbols.scalarSlots.keySet());
+		for (String name : symbols.arraySlots.keySet()) {
+			if (!symbols.scalarSlots.containsKey(name)) {
+				all.add(name);
+			}
+		}
+		int n = all.size();
+		names = new byte[n][];
+		scalarSlot = new int[n];
+		arraySlot = new int[n];
+		int capacity = 16;
+		while (capacity < 2*n) {
+			capacity *= 2;
+		}
+		nameTable = new int[capacity];
+		for (int e=0; e < n; e++) {
+			String name = all.get(e);
+			names[e] = name.getBytes(StandardCharsets.ISO_8859_1);
+			scalarSlot[e] = symbols.scalarSlot(name);
+			arraySlot[e] = symbols.arraySlot(name);
+			int i = hash(names[e], 0, names[e].length) & (capacity-1);
+			while (nameTable[i] != 0) {
+				i = (i+1) & (capacity-1);
+			}
+			nameTable[i] = e+1;
+		}
+	}
+
+	/**
+	 * Loads symbol values from a file.
+	 *
+	 * @param file Symbol values file
+	 * @return Malformed lines, in file order; empty if every line was loaded
+	 * @throws IOException If the file cannot be read or mapped
+	 */
+	public ArrayList<MalformedLine> load(File file)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+			long start = 0;
+			while (start < length) {
+				long end = start + CHUNK >= length ? length : lineEnd(channel, start + CHUNK, length);
+				if (end - start > Integer.MAX_VALUE) {
+					throw new IOException("Line at offset " + start + " is too long to map");
+				}
+				chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end-start), start));
+				start = end;
+			}
+			try {
+				ForkJoinTask.invokeAll(chunks);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			ArrayList<MalformedLine> errors = new ArrayList<MalformedLine>();
+			for (Chunk c : chunks) {
+				c.store();
+				errors.addAll(c.errors);
+			}
+			return errors;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Loads symbol values from a file, and fails if any line is malformed. The lines
+	 * before and after a malformed one are still loaded.
+	 *
+	 * @param file Symbol values file
+	 * @throws IOException If the file cannot be read, or has a malformed line; the
+	 *         message gives the first one
+	 */
+	public void loadStrict(File file)
+	throws IOException {
+		ArrayList<MalformedLine> errors = load(file);
+		if (!errors.isEmpty()) {
+			throw new IOException(file + ": " + errors.size() + " malformed line(s), first at " +
+					errors.get(0));
+		}
+	}
+
+	/**
+	 * Finds the end of the line that contains a given position.
+	 *
+	 * @param channel File channel
+	 * @param pos Position in the file
+	 * @param length Length of the file
+	 * @return Position just past the next newline at or after pos, or the file length
+	 * @throws IOException If the file cannot be read
+	 */
+	private static long lineEnd(FileChannel channel, long pos, long length)
+	throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(8192);
+		while (pos < length) {
+			buf.clear();
+			int n = channel.read(buf, pos);
+			for (int i=0; i < n; i++) {
+				if (buf.get(i) == '\n') {
+					return pos + i + 1;
+				}
+			}
+			pos += n;
+		}
+		return length;
+	}
+
+	/**
+	 * Looks up a symbol name given as bytes.
+	 *
+	 * @param buf Buffer holding the name
+	 * @param from Position of the first byte
+	 * @param to Position just past the last byte
+	 * @return Name number, or -1 if the name is not in the table
+	 */
+	int findName(ByteBuffer buf, int from, int to) {
+		int mask = nameTable.length-1;
+		int i = hash(buf, from, to) & mask;
+		while (nameTable[i] != 0) {
+			byte[] name = names[nameTable[i]-1];
+			if (name.length == to-from) {
+				int k = 0;
+				while (k < name.length && name[k] == buf.get(from+k)) {
+					k++;
+				}
+				if (k == name.length) {
+					return nameTable[i]-1;
+				}
+			}
+			i = (i+1) & mask;
+		}
+		return -1;
+	}
+
+	private static int hash(byte[] b, int from, int to) {
+		int h = 0;
+		for (int i=from; i < to; i++) {
+			h = 31*h + b[i];
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(ByteBuffer b, int from, int to) {
+		int h = 0;
+		for (int i=from; i < to; i++) {
+			h = 31*h + b.get(i);
+		}
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Parses one chunk of the file. Parsed values are kept in the chunk until store is
+	 * called, so that chunks can be stored in file order.
+	 */
+	private class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		MappedByteBuffer buf;
+		long base;
+		int pos;
+
+		int[] scalarSets = new int[32];
+		int numScalarSets = 0;
+		ArrayList<ScalarSymbol> declaredScalars = new ArrayList<ScalarSymbol>();
+		ArrayList<ArraySymbol> arraySets = new ArrayList<ArraySymbol>();
+		ArrayList<MalformedLine> errors = new ArrayList<MalformedLine>();
+
+		Chunk(MappedByteBuffer buf, long base) {
+			this.buf = buf;
+			this.base = base;
+		}
+
+		protected void compute() {
+			int n = buf.limit();
+			int p = 0;
+			while (p < n) {
+				int end = p;
+				while (end < n && buf.get(end) != '\n') {
+					end++;
+				}
+				try {
+					parseLine(p, end);
+				} catch (NumberFormatException e) {
+					errors.add(new MalformedLine(base + pos, e.getMessage() + ": " + text(p, end)));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				p = end+1;
+			}
+		}
+
+		/**
+		 * Copies the parsed values into the symbol table.
+		 */
+		void store() {
+			for (int i=0; i < numScalarSets; i += 2) {
+				symbols.scalars.get(scalarSets[i]).value = scalarSets[i+1];
+			}
+			for (ScalarSymbol parsed : declaredScalars) {
+				symbols.scalars.get(symbols.addScalar(parsed.name)).value = parsed.value;
+			}
+			for (ArraySymbol parsed : arraySets) {
+				// addArray returns the existing slot of a symbol that is in the table
+				ArraySymbol as = symbols.arrays.get(symbols.addArray(parsed.name));
+				// a later line for the same name replaces the array
+				SymbolTable.replace(as, parsed.values, parsed.storage);
+			}
+		}
+
+		void parseLine(int start, int end)
+		throws IOException {
+			pos = start;
+			skipSpaces(end);
+			if (pos == end) {
+				return;
+			}
+			int nameStart = pos;
+			while (pos < end && !isSpace(buf.get(pos))) {
+				pos++;
+			}
+			int nameEnd = pos;
+			int e = findName(buf, nameStart, nameEnd);
+			if (e == -1 && !declare) {
+				return;
+			}
+			skipSpaces(end);
+			int num = parseInt(end);
+			skipSpaces(end);
+			if (pos == end) { // scalar symbol
+				if (e == -1 || scalarSlot[e] == -1) {
+					if (declare) {
+						ScalarSymbol parsed = new ScalarSymbol(name(nameStart, nameEnd));
+						parsed.value = num;
+						declaredScalars.add(parsed);
+					}
+				} else {
+					if (numScalarSets == scalarSets.length) {
+						scalarSets = Arrays.copyOf(scalarSets, 2*numScalarSets);
+					}
+					scalarSets[numScalarSets++] = scalarSlot[e];
+					scalarSets[numScalarSets++] = num;
+				}
+				return;
+			}
+			if ((e == -1 || arraySlot[e] == -1) && !declare) {
+				return;
+			}
+			if (num < 0) {
+				throw new NumberFormatException("negative array length");
+			}
+			int given = 0;
+			for (int i=pos; i < end; i++) {
+				if (buf.get(i) == '(') {
+					given++;
+				}
+			}
+			ArrayStorage storage = symbols.newStorage(num, given);
+			int[] values = storage == null ? new int[num] : null;
+			// following are (index,val) pairs
+			try {
+				while (pos < end) {
+					expect('(', end);
+					int index = parseInt(end);
+					expect(',', end);
+					int val = parseInt(end);
+					expect(')', end);
+					if (index < 0 || index >= num) {
+						throw new NumberFormatException("index " + index + " out of range");
+					}
+					if (values != null) {
+						values[index] = val;
+					} else {
+						storage.set(index, val);
+					}
+				}
+			} catch (NumberFormatException ex) {
+				if (storage instanceof MappedArrayStorage) {
+					((MappedArrayStorage)storage).delete();
+				}
+				throw ex;
+			}
+			ArraySymbol parsed = new ArraySymbol(e != -1 && arraySlot[e] != -1 ?
+					symbols.arrays.get(arraySlot[e]).name : name(nameStart, nameEnd));
+			parsed.values = values;
+			parsed.storage = storage;
+			arraySets.add(parsed);
+		}
+
+		void expect(char c, int end) {
+			skipSpaces(end);
+			if (pos == end || buf.get(pos) != c) {
+				throw new NumberFormatException("expected '" + c + "'");
+			}
+			pos++;
+			skipSpaces(end);
+		}
+
+		int parseInt(int end) {
+			boolean negative = false;
+			if (pos < end && buf.get(pos) == '-') {
+				negative = true;
+				pos++;
+			}
+			int digitsStart = pos;
+			long v = 0;
+			while (pos < end) {
+				int d = buf.get(pos) - '0';
+				if (d < 0 || d > 9) {
+					break;
+				}
+				v = 10*v + d;
+				if (v > (long)Integer.MAX_VALUE + 1) {
+					throw new NumberFormatException("integer out of range");
+				}
+				pos++;
+			}
+			if (pos == digitsStart) {
+				throw new NumberFormatException("expected integer");
+			}
+			if (negative) {
+				v = -v;
+			}
+			if (v > Integer.MAX_VALUE) {
+				throw new NumberFormatException("integer out of range");
+			}
+			return (int)v;
+		}
+
+		void skipSpaces(int end) {
+			while (pos < end && isSpace(buf.get(pos))) {
+				pos++;
+			}
+		}
+
+		/**
+		 * Returns a symbol name in the chunk as a string.
+		 */
+		String name(int start, int end) {
+			byte[] b = new byte[end-start];
+			for (int i=0; i < b.length; i++) {
+				b[i] = buf.get(start+i);
+			}
+			return new String(b, StandardCharsets.ISO_8859_1);
+		}
+
+		/**
+		 * Returns up to 80 bytes of the chunk as a string, trimmed.
+		 */
+		String text(int start, int end) {
+			int n = Math.min(end-start, 80);
+			byte[] b = new byte[n];
+			for (int i=0; i < n; i++) {
+				b[i] = buf.get(start+i);
+			}
+			return new String(b, StandardCharsets.ISO_8859_1).trim();
+		}
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+}
@@ -0,0 +1,563 @@
+package apps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a symbol table, so that a large symbol values file is parsed once and
+ * then reopened without going through the text parser. All numbers are little-endian.
+ *
+ * <pre>
+ * header   int magic, int version, long source length, long source last modified,
+ *          long payload length, int scalars, int arrays, long CRC32 of the payload,
+ *          long CRC32 of the directory
+ * scalar   int name length, name (UTF-8), int value
+ * array    int name length, name (UTF-8), padding to a multiple of 4, int kind,
+ *          int length, then for DENSE the values, for SPARSE int count, the indexes
+ *          and the values
+ * </pre>
+ *
+ * Arrays of at least MAP_MIN_LENGTH elements are not read at all when a snapshot is
+ * loaded: they are mapped straight from the file into a read-only MappedArrayStorage.
+ * Smaller arrays are copied into their values array with one bulk read.
+ *
+ * The header records the length and modification time of the text file the snapshot was
+ * made from, so loadOrBuild can tell when the snapshot is out of date and rebuild it. A
+ * snapshot with a different version, or whose directory checksum does not match, is
+ * rebuilt too. The directory checksum covers the first 40 bytes of the header and, for
+ * every symbol, its name, its value if it is a scalar, and its kind, length and count if
+ * it is an array, but none of the array values, so loading costs nothing per element of
+ * a mapped array. The checksum of the whole payload, which is computed as the snapshot is
+ * written, is only checked by verify.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class SymbolSnapshot {
+
+	/**
+	 * First int of every snapshot file ("SYMS")
+	 */
+	static final int MAGIC = 0x534D5953;
+
+	/**
+	 * Version of the format; snapshots of any other version are rebuilt
+	 */
+	static final int VERSION = 2;
+
+	/**
+	 * Size of the header, in bytes
+	 */
+	static final int HEADER = 56;
+
+	/**
+	 * Number of bytes at the start of the header that the directory checksum covers
+	 */
+	static final int HEADER_CHECKED = 40;
+
+	/**
+	 * Kinds of array
+	 */
+	static final int NONE=0, DENSE=1, SPARSE=2;
+
+	/**
+	 * Dense arrays with at least this many elements are mapped instead of copied
+	 */
+	static final int MAP_MIN_LENGTH = 1 << 16;
+
+	/**
+	 * Size of the buffer used to read and write the payload, in bytes
+	 */
+	static final int BUFFER = 1 << 16;
+
+	/**
+	 * Returns the snapshot file kept next to a symbol values file.
+	 *
+	 * @param source Symbol values file
+	 * @return Snapshot file: the same name with .snap appended
+	 */
+	public static File snapshotFile(File source) {
+		return new File(source.getPath() + ".snap");
+	}
+
+	/**
+	 * Loads every symbol of a symbol values file, from its snapshot if the snapshot is up
+	 * to date and intact, or else from the text, in which case the snapshot is (re)written.
+	 *
+	 * @param source Symbol values file
+	 * @param snapshot Snapshot file
+	 * @return Symbol table with every symbol in the file
+	 * @throws IOException If the source cannot be read
+	 */
+	public static SymbolTable loadOrBuild(File source, File snapshot)
+	throws IOException {
+		if (isCurrent(snapshot, source)) {
+			try {
+				return load(snapshot);
+			} catch (IOException e) {
+				// corrupt or truncated; rebuild it below
+			}
+		}
+		SymbolTable table = new SymbolTable();
+		table.loadAll(source);
+		try {
+			save(table, snapshot, source);
+		} catch (IOException e) {
+			// the table is good; the snapshot is only a cache
+			snapshot.delete();
+		}
+		return table;
+	}
+
+	/**
+	 * Tells whether a snapshot exists, has the current version, and was made from the
+	 * current contents of a source file. Only the header is read.
+	 *
+	 * @param snapshot Snapshot file
+	 * @param source Symbol values file it was made from, or null not to check it
+	 * @return True if the snapshot can be used
+	 */
+	public static boolean isCurrent(File snapshot, File source) {
+		if (!snapshot.isFile() || snapshot.length() < HEADER) {
+			return false;
+		}
+		try {
+			RandomAccessFile raf = new RandomAccessFile(snapshot, "r");
+			try {
+				ByteBuffer header = readHeader(raf.getChannel());
+				if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+					return false;
+				}
+				return source == null || (header.getLong(8) == source.length() &&
+						header.getLong(16) == source.lastModified());
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a snapshot of a symbol table. The snapshot is written to a temporary file
+	 * that then replaces the snapshot file, so a reader never sees half a snapshot.
+	 *
+	 * @param table Symbol table
+	 * @param snapshot Snapshot file
+	 * @param source Symbol values file the table was loaded from, or null
+	 * @throws IOException If the snapshot cannot be written
+	 */
+	public static void save(SymbolTable table, File snapshot, File source)
+	throws IOException {
+		File temp = new File(snapshot.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			Output out = new Output(channel, HEADER);
+			CRC32 directory = new CRC32();
+			for (ScalarSymbol ss : table.scalars) {
+				out.putName(ss.name);
+				out.putInt(ss.value);
+				update(directory, ss.name);
+				update(directory, ss.value);
+			}
+			for (ArraySymbol as : table.arrays) {
+				out.putName(as.name);
+				out.align();
+				update(directory, as.name);
+				if (as.values != null) {
+					out.putInt(DENSE);
+					out.putInt(as.values.length);
+					update(directory, DENSE);
+					update(directory, as.values.length);
+					out.putInts(as.values, as.values.length);
+				} else if (as.storage instanceof SparseArrayStorage) {
+					SparseArrayStorage sparse = (SparseArrayStorage)as.storage;
+					int[] indexes = new int[sparse.count()];
+					int[] values = new int[sparse.count()];
+					sparse.entries(indexes, values);
+					out.putInt(SPARSE);
+					out.putInt(sparse.length());
+					out.putInt(indexes.length);
+					update(directory, SPARSE);
+					update(directory, sparse.length());
+					update(directory, indexes.length);
+					out.putInts(indexes, indexes.length);
+					out.putInts(values, values.length);
+				} else if (as.storage != null) {
+					int length = as.storage.length();
+					out.putInt(DENSE);
+					out.putInt(length);
+					update(directory, DENSE);
+					update(directory, length);
+					int[] chunk = new int[BUFFER/4];
+					for (int from=0; from < length; from += chunk.length) {
+						int n = Math.min(chunk.length, length - from);
+						for (int k=0; k < n; k++) {
+							chunk[k] = as.storage.get(from + k);
+						}
+						out.putInts(chunk, n);
+					}
+				} else {
+					out.putInt(NONE);
+					out.putInt(0);
+					update(directory, NONE);
+					update(directory, 0);
+				}
+			}
+			long payload = out.finish() - HEADER;
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION);
+			header.putLong(source == null ? 0 : source.length());
+			header.putLong(source == null ? 0 : source.lastModified());
+			header.putLong(payload);
+			header.putInt(table.scalars.size()).putInt(table.arrays.size());
+			directory.update(header.array(), 0, HEADER_CHECKED);
+			header.putLong(out.crc.getValue()).putLong(directory.getValue());
+			header.flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.force(false);
+		} finally {
+			raf.close();
+		}
+		if (!temp.renameTo(snapshot)) {
+			// some platforms will not rename over an existing file
+			snapshot.delete();
+			if (!temp.renameTo(snapshot)) {
+				temp.delete();
+				throw new IOException("Cannot replace " + snapshot);
+			}
+		}
+	}
+
+	/**
+	 * Loads a snapshot, after checking its version and length, and its directory checksum
+	 * once the directory has been read. Large arrays are mapped from the file rather than
+	 * read (see MAP_MIN_LENGTH), and array values are not checksummed (see verify).
+	 *
+	 * @param snapshot Snapshot file
+	 * @return Symbol table with every symbol in the snapshot
+	 * @throws IOException If the file cannot be read, is not a snapshot of the current
+	 *         version, or is corrupt
+	 */
+	public static SymbolTable load(File snapshot)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(snapshot, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = checkHeader(channel, snapshot);
+			int numScalars = header.getInt(32);
+			int numArrays = header.getInt(36);
+
+			SymbolTable table = new SymbolTable();
+			CRC32 directory = new CRC32();
+			Input in = new Input(channel, HEADER);
+			for (int s=0; s < numScalars; s++) {
+				String name = in.getName();
+				int value = in.getInt();
+				table.scalars.get(table.addScalar(name)).value = value;
+				update(directory, name);
+				update(directory, value);
+			}
+			for (int s=0; s < numArrays; s++) {
+				String name = in.getName();
+				ArraySymbol as = table.arrays.get(table.addArray(name));
+				in.align();
+				int kind = in.getInt();
+				int length = in.getInt();
+				update(directory, name);
+				update(directory, kind);
+				update(directory, length);
+				if (kind == DENSE) {
+					if (length >= MAP_MIN_LENGTH) {
+						as.storage = new MappedArrayStorage(channel, in.position(), length, false);
+						in.skip(4L*length);
+					} else {
+						as.values = new int[length];
+						in.getInts(as.values, length);
+					}
+				} else if (kind == SPARSE) {
+					int count = in.getInt();
+					update(directory, count);
+					int[] indexes = new int[count];
+					int[] values = new int[count];
+					in.getInts(indexes, count);
+					in.getInts(values, count);
+					SparseArrayStorage sparse = new SparseArrayStorage(length, count);
+					for (int k=0; k < count; k++) {
+						sparse.set(indexes[k], values[k]);
+					}
+					as.storage = sparse;
+				} else if (kind != NONE) {
+					throw new IOException(snapshot + " has an unknown array kind " + kind);
+				}
+			}
+			directory.update(header.array(), 0, HEADER_CHECKED);
+			if (directory.getValue() != header.getLong(48)) {
+				throw new IOException(snapshot + " is corrupt (directory checksum mismatch)");
+			}
+			return table;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Checks a whole snapshot, including every array value, against the checksum of its
+	 * payload. This reads the entire file, so load does not do it.
+	 *
+	 * @param snapshot Snapshot file
+	 * @throws IOException If the file cannot be read, is not a snapshot of the current
+	 *         version, or is corrupt
+	 */
+	public static void verify(File snapshot)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(snapshot, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = checkHeader(channel, snapshot);
+			if (checksum(channel, HEADER, header.getLong(24)) != header.getLong(40)) {
+				throw new IOException(snapshot + " is corrupt (checksum mismatch)");
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads the header, and checks the magic number, the version and the file length.
+	 */
+	private static ByteBuffer checkHeader(FileChannel channel, File snapshot)
+	throws IOException {
+		ByteBuffer header = readHeader(channel);
+		if (header.getInt(0) != MAGIC) {
+			throw new IOException(snapshot + " is not a symbol snapshot");
+		}
+		if (header.getInt(4) != VERSION) {
+			throw new IOException(snapshot + " has version " + header.getInt(4) +
+					", expected " + VERSION);
+		}
+		if (HEADER + header.getLong(24) != channel.size()) {
+			throw new IOException(snapshot + " is truncated");
+		}
+		return header;
+	}
+
+	private static ByteBuffer readHeader(FileChannel channel)
+	throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				throw new IOException("Snapshot header is truncated");
+			}
+		}
+		return header;
+	}
+
+	/**
+	 * Adds the UTF-8 bytes of a name to a checksum.
+	 */
+	private static void update(CRC32 crc, String name) {
+		crc.update(name.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Adds the four bytes of an int, low byte first, to a checksum.
+	 */
+	private static void update(CRC32 crc, int v) {
+		crc.update(v);
+		crc.update(v >>> 8);
+		crc.update(v >>> 16);
+		crc.update(v >>> 24);
+	}
+
+	/**
+	 * Computes the CRC32 of a region of a file, mapping it a chunk at a time.
+	 */
+	private static long checksum(FileChannel channel, long offset, long length)
+	throws IOException {
+		CRC32 crc = new CRC32();
+		for (long done=0; done < length; ) {
+			long n = Math.min(1L << 30, length - done);
+			MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset + done, n);
+			crc.update(chunk);
+			done += n;
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Buffered little-endian writer that also computes the CRC32 of what it writes.
+	 */
+	private static class Output {
+		FileChannel channel;
+		ByteBuffer buf;
+		long position;
+		CRC32 crc;
+
+		Output(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+			buf = ByteBuffer.allocate(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+			crc = new CRC32();
+		}
+
+		void flush() throws IOException {
+			buf.flip();
+			crc.update(buf.array(), 0, buf.limit());
+			while (buf.hasRemaining()) {
+				position += channel.write(buf, position);
+			}
+			buf.clear();
+		}
+
+		void putInt(int v) throws IOException {
+			if (buf.remaining() < 4) {
+				flush();
+			}
+			buf.putInt(v);
+		}
+
+		void putInts(int[] v, int n) throws IOException {
+			for (int from=0; from < n; ) {
+				if (buf.remaining() < 4) {
+					flush();
+				}
+				int k = Math.min(n - from, buf.remaining()/4);
+				IntBuffer ib = buf.asIntBuffer();
+				ib.put(v, from, k);
+				buf.position(buf.position() + 4*k);
+				from += k;
+			}
+		}
+
+		void putName(String name) throws IOException {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			for (int from=0; from < bytes.length; ) {
+				if (!buf.hasRemaining()) {
+					flush();
+				}
+				int k = Math.min(bytes.length - from, buf.remaining());
+				buf.put(bytes, from, k);
+				from += k;
+			}
+		}
+
+		/**
+		 * Pads with zero bytes to a multiple of 4, so that array values are aligned.
+		 */
+		void align() throws IOException {
+			while (((position + buf.position()) & 3) != 0) {
+				if (!buf.hasRemaining()) {
+					flush();
+				}
+				buf.put((byte)0);
+			}
+		}
+
+		/**
+		 * Writes what is left in the buffer.
+		 *
+		 * @return Position just past the last byte written
+		 */
+		long finish() throws IOException {
+			flush();
+			return position;
+		}
+	}
+
+	/**
+	 * Buffered little-endian reader over a region of a file.
+	 */
+	private static class Input {
+		FileChannel channel;
+		ByteBuffer buf;
+
+		/**
+		 * File position of the start of the buffer
+		 */
+		long start;
+
+		Input(FileChannel channel, long position) {
+			this.channel = channel;
+			this.start = position;
+			buf = ByteBuffer.allocate(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+			buf.limit(0);
+		}
+
+		long position() {
+			return start + buf.position();
+		}
+
+		/**
+		 * Makes at least n bytes available in the buffer.
+		 */
+		void need(int n) throws IOException {
+			if (buf.remaining() >= n) {
+				return;
+			}
+			start += buf.position();
+			buf.compact();
+			while (buf.position() < n) {
+				if (channel.read(buf, start + buf.position()) < 0) {
+					throw new IOException("Snapshot is truncated");
+				}
+			}
+			buf.flip();
+		}
+
+		int getInt() throws IOException {
+			need(4);
+			return buf.getInt();
+		}
+
+		void getInts(int[] v, int n) throws IOException {
+			for (int from=0; from < n; ) {
+				need(4);
+				int k = Math.min(n - from, buf.remaining()/4);
+				buf.asIntBuffer().get(v, from, k);
+				buf.position(buf.position() + 4*k);
+				from += k;
+			}
+		}
+
+		String getName() throws IOException {
+			int length = getInt();
+			if (length < 0 || length > BUFFER) {
+				throw new IOException("Bad name length " + length + " in snapshot");
+			}
+			need(length);
+			String name = new String(buf.array(), buf.arrayOffset() + buf.position(), length,
+					StandardCharsets.UTF_8);
+			buf.position(buf.position() + length);
+			return name;
+		}
+
+		void align() throws IOException {
+			skip((4 - (position() & 3)) & 3);
+		}
+
+		void skip(long n) throws IOException {
+			if (n <= buf.remaining()) {
+				buf.position(buf.position() + (int)n);
+				return;
+			}
+			start = position() + n;
+			buf.clear();
+			buf.limit(0);
+		}
+	}
+}
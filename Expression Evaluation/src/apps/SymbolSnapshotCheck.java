@@ -0,0 +1,190 @@
+package apps;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Checks that a symbol table survives a round trip through a binary snapshot. A random
+ * symbol values file is written, with scalars and with arrays of every storage kind
+ * (plain, sparse, mapped from the text, and large enough to be mapped from the
+ * snapshot), and loaded from the text as the reference. The snapshot is then saved and
+ * loaded, checked in full, corrupted in an array value and in its directory, and made
+ * stale, and every table that comes back is compared with the reference symbol by
+ * symbol. Prints the result of each check, and exits with status 1 if any fails.
+ *
+ * Usage: java apps.SymbolSnapshotCheck [seed]
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class SymbolSnapshotCheck {
+
+	/**
+	 * Number of checks that failed so far
+	 */
+	static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 1);
+		File dir = File.createTempFile("snapshot", "");
+		dir.delete();
+		dir.mkdir();
+		File source = new File(dir, "symbols.txt");
+		File snapshot = SymbolSnapshot.snapshotFile(source);
+		try {
+			writeSymbols(source, random);
+			SymbolTable expected = loadText(source);
+
+			SymbolSnapshot.save(expected, snapshot, source);
+			check("isCurrent after save", SymbolSnapshot.isCurrent(snapshot, source));
+			check("save and load", same(expected, SymbolSnapshot.load(snapshot)));
+			check("verify", verifies(snapshot));
+			check("loadOrBuild from the snapshot",
+					same(expected, SymbolSnapshot.loadOrBuild(source, snapshot)));
+
+			// a flipped array value is only caught by verify, since load maps arrays unread
+			long length = snapshot.length();
+			flip(snapshot, length - 8);
+			boolean loads = true;
+			try {
+				SymbolSnapshot.load(snapshot);
+			} catch (IOException e) {
+				loads = false;
+			}
+			check("load with a corrupt array value", loads);
+			check("verify with a corrupt array value", !verifies(snapshot));
+			flip(snapshot, length - 8);
+
+			// a flipped byte of the first scalar's name is caught by load
+			flip(snapshot, SymbolSnapshot.HEADER + 4);
+			boolean rejected = false;
+			try {
+				SymbolSnapshot.load(snapshot);
+			} catch (IOException e) {
+				rejected = true;
+			}
+			check("load with a corrupt directory", rejected);
+			check("loadOrBuild rebuilds a corrupt snapshot",
+					same(expected, SymbolSnapshot.loadOrBuild(source, snapshot)) &&
+					verifies(snapshot));
+
+			// a changed source makes the snapshot stale
+			PrintWriter pw = new PrintWriter(new FileWriter(source, true));
+			pw.println("added 12345");
+			pw.close();
+			source.setLastModified(source.lastModified() + 2000);
+			check("isCurrent after the source changes", !SymbolSnapshot.isCurrent(snapshot, source));
+			SymbolTable rebuilt = SymbolSnapshot.loadOrBuild(source, snapshot);
+			check("loadOrBuild rebuilds a stale snapshot", same(loadText(source), rebuilt) &&
+					rebuilt.scalar(rebuilt.scalarSlot("added")).value == 12345 &&
+					SymbolSnapshot.isCurrent(snapshot, source));
+		} finally {
+			snapshot.delete();
+			source.delete();
+			dir.delete();
+		}
+		System.out.println(failures == 0 ? "all checks passed" : failures + " checks failed");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Writes a symbol values file with random scalars and arrays.
+	 */
+	static void writeSymbols(File file, Random random)
+	throws IOException {
+		PrintWriter pw = new PrintWriter(file);
+		for (int s=0; s < 500; s++) {
+			pw.println("s" + s + " " + random.nextInt());
+		}
+		// plain, sparse, mapped from the text (see loadText), and mapped from the snapshot
+		int[] lengths = { 10, 5000, 1 << 17, 1 << 16 };
+		int[] given = { 10, 20, 1 << 17, 1 << 16 };
+		for (int a=0; a < lengths.length; a++) {
+			StringBuilder sb = new StringBuilder("A" + a + " " + lengths[a]);
+			for (int k=0; k < given[a]; k++) {
+				int index = given[a] == lengths[a] ? k : random.nextInt(lengths[a]);
+				sb.append(" (").append(index).append(',').append(random.nextInt()).append(')');
+			}
+			pw.println(sb);
+		}
+		pw.close();
+	}
+
+	/**
+	 * Loads every symbol of a symbol values file from its text.
+	 */
+	static SymbolTable loadText(File file)
+	throws IOException {
+		SymbolTable table = new SymbolTable();
+		table.mappedMinLength = 1 << 17;
+		table.loadAll(file);
+		return table;
+	}
+
+	/**
+	 * Tells whether two tables have the same symbols, in the same slots, with the same
+	 * values.
+	 */
+	static boolean same(SymbolTable expected, SymbolTable actual) {
+		if (expected.numScalars() != actual.numScalars() ||
+				expected.numArrays() != actual.numArrays()) {
+			return false;
+		}
+		for (int s=0; s < expected.numScalars(); s++) {
+			ScalarSymbol e = expected.scalar(s), a = actual.scalar(s);
+			if (!e.name.equals(a.name) || e.value != a.value) {
+				return false;
+			}
+		}
+		for (int s=0; s < expected.numArrays(); s++) {
+			ArraySymbol e = expected.array(s), a = actual.array(s);
+			if (!e.name.equals(a.name) || e.length() != a.length()) {
+				return false;
+			}
+			for (int k=0; k < e.length(); k++) {
+				if (e.get(k) != a.get(k)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	static boolean verifies(File snapshot) {
+		try {
+			SymbolSnapshot.verify(snapshot);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Flips the low bit of one byte of a file.
+	 */
+	static void flip(File file, long position)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(position);
+			int b = raf.read();
+			raf.seek(position);
+			raf.write(b ^ 1);
+		} finally {
+			raf.close();
+		}
+	}
+
+	static void check(String check, boolean ok) {
+		System.out.println(check + ": " + (ok ? "ok" : "FAILED"));
+		if (!ok) {
+			failures++;
+		}
+	}
+}
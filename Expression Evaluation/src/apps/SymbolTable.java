@@ -0,0 +1,330 @@
+package apps;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.StringTokenizer;
+
+/**
+ * This class holds the scalar and array symbols of an expression, each at a fixed integer
+ * slot. A name is looked up in a hash map ONCE, when it is resolved to a slot; after that
+ * the value is read and written by slot, in constant time.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class SymbolTable {
+
+	/**
+	 * Scalar symbols, indexed by slot
+	 */
+	ArrayList<ScalarSymbol> scalars;
+
+	/**
+	 * Array symbols, indexed by slot
+	 */
+	ArrayList<ArraySymbol> arrays;
+
+	/**
+	 * Slot of each scalar symbol, by name
+	 */
+	HashMap<String,Integer> scalarSlots;
+
+	/**
+	 * Slot of each array symbol, by name
+	 */
+	HashMap<String,Integer> arraySlots;
+
+	/**
+	 * Arrays with at least this many elements are kept in a SparseArrayStorage when
+	 * fewer than one in SPARSE_RATIO of their elements are given in the input
+	 */
+	public int sparseMinLength = 1024;
+
+	/**
+	 * Arrays with at least this many elements are kept in a MappedArrayStorage backed by
+	 * a temporary file, instead of on the heap
+	 */
+	public int mappedMinLength = 1 << 27;
+
+	/**
+	 * Ratio of declared length to given elements above which an array is stored sparse
+	 */
+	static final int SPARSE_RATIO = 8;
+
+	/**
+	 * Initializes an empty symbol table.
+	 */
+	public SymbolTable() {
+		scalars = new ArrayList<ScalarSymbol>();
+		arrays = new ArrayList<ArraySymbol>();
+		scalarSlots = new HashMap<String,Integer>();
+		arraySlots = new HashMap<String,Integer>();
+	}
+
+	/**
+	 * Returns the slot of a scalar symbol.
+	 *
+	 * @param name Symbol name
+	 * @return Slot, or -1 if there is no scalar with this name
+	 */
+	public int scalarSlot(String name) {
+		Integer slot = scalarSlots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Returns the slot of an array symbol.
+	 *
+	 * @param name Symbol name
+	 * @return Slot, or -1 if there is no array with this name
+	 */
+	public int arraySlot(String name) {
+		Integer slot = arraySlots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Adds a scalar symbol with zero value, if it is not already in the table.
+	 *
+	 * @param name Symbol name
+	 * @return Slot of the symbol
+	 */
+	public int addScalar(String name) {
+		Integer slot = scalarSlots.get(name);
+		if (slot != null) {
+			return slot;
+		}
+		scalars.add(new ScalarSymbol(name));
+		scalarSlots.put(name, scalars.size()-1);
+		return scalars.size()-1;
+	}
+
+	/**
+	 * Adds an array symbol with null values, if it is not already in the table.
+	 *
+	 * @param name Symbol name
+	 * @return Slot of the symbol
+	 */
+	public int addArray(String name) {
+		Integer slot = arraySlots.get(name);
+		if (slot != null) {
+			return slot;
+		}
+		arrays.add(new ArraySymbol(name));
+		arraySlots.put(name, arrays.size()-1);
+		return arrays.size()-1;
+	}
+
+	/**
+	 * Returns the scalar symbol at a slot.
+	 *
+	 * @param slot Slot
+	 * @return Scalar symbol
+	 */
+	public ScalarSymbol scalar(int slot) {
+		return scalars.get(slot);
+	}
+
+	/**
+	 * Returns the array symbol at a slot.
+	 *
+	 * @param slot Slot
+	 * @return Array symbol
+	 */
+	public ArraySymbol array(int slot) {
+		return arrays.get(slot);
+	}
+
+	/**
+	 * Returns the number of scalar symbols.
+	 *
+	 * @return Number of scalar symbols
+	 */
+	public int numScalars() {
+		return scalars.size();
+	}
+
+	/**
+	 * Returns the number of array symbols.
+	 *
+	 * @return Number of array symbols
+	 */
+	public int numArrays() {
+		return arrays.size();
+	}
+
+	/**
+	 * Loads values for the symbols in this table. Each line of input is either a scalar
+	 * (name value) or an array (name length (index,val) (index,val) ...). Lines for names
+	 * that are not in the table are skipped. Each array is stored in a plain int array,
+	 * a SparseArrayStorage or a MappedArrayStorage, depending on its length and on how
+	 * many of its elements are given (see sparseMinLength and mappedMinLength).
+	 *
+	 * @param sc Scanner for values input
+	 * @throws IOException If there is a problem with the input
+	 */
+	public void load(Scanner sc)
+	throws IOException {
+		load(sc, false);
+	}
+
+	/**
+	 * Loads values for every symbol in the input, adding to the table the symbols that
+	 * are not already in it. A line with a single value declares a scalar, and a line
+	 * with (index,val) pairs declares an array.
+	 *
+	 * @param sc Scanner for values input
+	 * @throws IOException If there is a problem with the input
+	 */
+	public void loadAll(Scanner sc)
+	throws IOException {
+		load(sc, true);
+	}
+
+	/**
+	 * Loads values for the symbols in this table from a symbol values file, through a
+	 * SymbolFileLoader, which maps the file and parses it in parallel. The format and the
+	 * choice of storage are as for load(Scanner).
+	 *
+	 * @param file Symbol values file
+	 * @throws IOException If the file cannot be read, or a line is malformed
+	 */
+	public void load(File file)
+	throws IOException {
+		new SymbolFileLoader(this, false).loadStrict(file);
+	}
+
+	/**
+	 * Loads values for every symbol in a symbol values file, adding to the table the
+	 * symbols that are not already in it, as loadAll(Scanner) does, through a
+	 * SymbolFileLoader.
+	 *
+	 * @param file Symbol values file
+	 * @throws IOException If the file cannot be read, or a line is malformed
+	 */
+	public void loadAll(File file)
+	throws IOException {
+		new SymbolFileLoader(this, true).loadStrict(file);
+	}
+
+	/**
+	 * Loads values, optionally declaring the symbols that are not in the table.
+	 *
+	 * @param sc Scanner for values input
+	 * @param declare True to add unknown symbols, false to skip their lines
+	 * @throws IOException If there is a problem with the input
+	 */
+	private void load(Scanner sc, boolean declare)
+	throws IOException {
+		while (sc.hasNextLine()) {
+			StringTokenizer st = new StringTokenizer(sc.nextLine().trim());
+			int numTokens = st.countTokens();
+			if (numTokens == 0) {
+				continue;
+			}
+			String sym = st.nextToken();
+			if (declare) {
+				if (numTokens == 2) {
+					addScalar(sym);
+				} else if (numTokens > 2) {
+					addArray(sym);
+				}
+			}
+			Integer ssi = scalarSlots.get(sym);
+			Integer asi = arraySlots.get(sym);
+			if (ssi == null && asi == null) {
+				continue;
+			}
+			int num = Integer.parseInt(st.nextToken());
+			if (numTokens == 2) { // scalar symbol
+				if (ssi != null) {
+					scalars.get(ssi).value = num;
+				}
+			} else if (asi != null) { // array symbol
+				ArraySymbol asymbol = arrays.get(asi);
+				ArrayStorage storage = newStorage(num, numTokens-2);
+				int[] values = storage == null ? new int[num] : null;
+				// following are (index,val) pairs
+				while (st.hasMoreTokens()) {
+					String tok = st.nextToken();
+					StringTokenizer stt = new StringTokenizer(tok," (,)");
+					int index = Integer.parseInt(stt.nextToken());
+					int val = Integer.parseInt(stt.nextToken());
+					if (values != null) {
+						values[index] = val;
+					} else {
+						storage.set(index, val);
+					}
+				}
+				replace(asymbol, values, storage);
+			}
+		}
+	}
+
+	/**
+	 * Gives an array symbol new values, releasing the temporary file of the mapped
+	 * storage they replace, if any (see MappedArrayStorage.release).
+	 *
+	 * @param as Array symbol
+	 * @param values New values, or null
+	 * @param storage New storage, or null
+	 */
+	static void replace(ArraySymbol as, int[] values, ArrayStorage storage) {
+		if (as.storage instanceof MappedArrayStorage && as.storage != storage) {
+			((MappedArrayStorage)as.storage).release();
+		}
+		as.values = values;
+		as.storage = storage;
+	}
+
+	/**
+	 * Returns a new table with the same symbols at the same slots as this one, holding
+	 * the values of the symbols of the same names in another table. Array values are
+	 * shared with the other table, not copied. Symbols that are not in the other table
+	 * get a zero value, or null values for an array.
+	 *
+	 * @param source Table to take the values from
+	 * @return New table, with this table's slot layout
+	 */
+	public SymbolTable bind(SymbolTable source) {
+		SymbolTable t = new SymbolTable();
+		for (ScalarSymbol ss : scalars) {
+			int slot = t.addScalar(ss.name);
+			int from = source.scalarSlot(ss.name);
+			if (from != -1) {
+				t.scalars.get(slot).value = source.scalars.get(from).value;
+			}
+		}
+		for (ArraySymbol as : arrays) {
+			int slot = t.addArray(as.name);
+			int from = source.arraySlot(as.name);
+			if (from != -1) {
+				t.arrays.get(slot).values = source.arrays.get(from).values;
+				t.arrays.get(slot).storage = source.arrays.get(from).storage;
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Picks the storage for an array that is about to be loaded.
+	 *
+	 * @param length Declared length of the array
+	 * @param given Number of (index,val) pairs given for it
+	 * @return Sparse or mapped storage, or null if a plain int array should be used
+	 * @throws IOException If a temporary file for a mapped array cannot be created
+	 */
+	ArrayStorage newStorage(int length, int given)
+	throws IOException {
+		if (length >= mappedMinLength) {
+			return MappedArrayStorage.createTemp(length);
+		}
+		if (length >= sparseMinLength && (long)given*SPARSE_RATIO < length) {
+			return new SparseArrayStorage(length, given);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,97 @@
+package structures;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A stack of primitive ints. Works like Stack&lt;Integer&gt;, but stores the items in an
+ * int array, so pushing and popping never allocates once the array is big enough.
+ *
+ * @author ru-nb-cs112
+ *
+ */
+public class IntStack {
+
+	/**
+	 * Items in the stack; the top is at items[size-1].
+	 */
+	private int[] items;
+
+	/**
+	 * Number of items in the stack.
+	 */
+	private int size;
+
+	/**
+	 * Initializes stack to empty.
+	 */
+	public IntStack() {
+		items = new int[16];
+		size = 0;
+	}
+
+	/**
+	 * Pushes a new item on top of stack.
+	 *
+	 * @param item Item to push.
+	 */
+	public void push(int item) {
+		if (size == items.length) {
+			items = Arrays.copyOf(items, 2*size);
+		}
+		items[size++] = item;
+	}
+
+	/**
+	 * Pops item at top of stack and returns it.
+	 *
+	 * @return Popped item.
+	 * @throws NoSuchElementException If stack is empty.
+	 */
+	public int pop()
+	throws NoSuchElementException {
+		if (size == 0) {
+			throw new NoSuchElementException("can't pop from an empty stack");
+		}
+		return items[--size];
+	}
+
+	/**
+	 * Returns item on top of stack, without popping it.
+	 *
+	 * @return Item at top of stack.
+	 * @throws NoSuchElementException If stack is empty.
+	 */
+	public int peek()
+	throws NoSuchElementException {
+		if (size == 0) {
+			throw new NoSuchElementException("can't peek on an empty stack");
+		}
+		return items[size-1];
+	}
+
+	/**
+	 * Tells if stack is empty.
+	 *
+	 * @return True if stack is empty, false if not.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns number of items in stack.
+	 *
+	 * @return Number of items in stack.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Empties the stack.
+	 */
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,229 @@
+package apps;
+
+import structures.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Checks every interval structure against a brute-force scan of the intervals, on random
+ * intervals and queries: the sorts, single and batch intersection queries, counting and
+ * limited queries, point stabbing, the flat tree, the mapped index, the dynamic tree, and
+ * the tree built by IntervalFile. Endpoints are drawn from a small range, so that there
+ * are many equal endpoints. Prints the number of mismatches of each check, and exits with
+ * status 1 if there are any.
+ *
+ * Usage: java apps.IntervalCheckDriver [intervals [queries [seed]]]
+ *
+ * @author runb-cs112
+ */
+public class IntervalCheckDriver {
+
+	/**
+	 * Number of mismatches found so far
+	 */
+	static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		Random random = new Random(args.length > 2 ? Long.parseLong(args[2]) : 1);
+		int range = Math.max(10, n/2);
+
+		ArrayList<Interval> intervals = new ArrayList<Interval>();
+		for (int i=0; i < n; i++) {
+			intervals.add(randomInterval(random, range, "i" + i));
+		}
+		ArrayList<Interval> queries = new ArrayList<Interval>();
+		for (int i=0; i < numQueries; i++) {
+			queries.add(randomInterval(random, range, "q" + i));
+		}
+
+		checkSort(intervals);
+
+		IntervalTree tree = new IntervalTree(new ArrayList<Interval>(intervals));
+		FlatIntervalTree flat = new FlatIntervalTree(tree);
+		DynamicIntervalTree dynamic = new DynamicIntervalTree(intervals);
+		File index = File.createTempFile("intervals", ".idx");
+		File source = File.createTempFile("intervals", ".txt");
+		try {
+			IntervalIndex.save(tree, index, null);
+			IntervalIndex mapped = IntervalIndex.open(index);
+			IntervalTree loaded = writeAndRead(intervals, source).buildTree();
+
+			ArrayList<ArrayList<Interval>> batch = tree.findIntersectingIntervals(queries);
+			int single = 0, batched = 0, count = 0, limited = 0;
+			int flatQuery = 0, indexQuery = 0, dynamicQuery = 0, fileQuery = 0;
+			for (int i=0; i < numQueries; i++) {
+				Interval q = queries.get(i);
+				ArrayList<Interval> expected = bruteForce(intervals, q);
+				single += mismatch(expected, tree.findIntersectingIntervals(q));
+				batched += mismatch(expected, batch.get(i));
+				if (tree.countIntersectingIntervals(q) != expected.size()) {
+					count++;
+				}
+				int limit = random.nextInt(5);
+				ArrayList<Interval> some = tree.findIntersectingIntervals(q, limit);
+				if (some.size() != Math.min(limit, expected.size()) || !allIntersect(some, q)) {
+					limited++;
+				}
+				flatQuery += mismatch(expected, flat.findIntersectingIntervals(q));
+				indexQuery += mismatch(expected, mapped.findIntersectingIntervals(q));
+				dynamicQuery += mismatch(expected, dynamic.findIntersectingIntervals(q));
+				fileQuery += mismatch(expected, loaded.findIntersectingIntervals(q));
+			}
+			report("single query", single);
+			report("batch query", batched);
+			report("count", count);
+			report("limited query", limited);
+			report("flat tree query", flatQuery);
+			report("index query", indexQuery);
+			report("dynamic tree query", dynamicQuery);
+			report("IntervalFile tree query", fileQuery);
+
+			int treeStab = 0, flatStab = 0, indexStab = 0;
+			ArrayList<Interval> result = new ArrayList<Interval>();
+			for (int point=-1; point <= range+1; point++) {
+				Interval p = new Interval(point, point, "");
+				ArrayList<Interval> expected = bruteForce(intervals, p);
+				result.clear();
+				tree.stab(point, result);
+				treeStab += mismatch(expected, result);
+				result.clear();
+				flat.stab(point, result);
+				flatStab += mismatch(expected, result);
+				result.clear();
+				mapped.stab(point, result);
+				indexStab += mismatch(expected, result);
+			}
+			report("tree stab", treeStab);
+			report("flat tree stab", flatStab);
+			report("index stab", indexStab);
+
+			checkDynamic(intervals, queries, random, range);
+		} finally {
+			index.delete();
+			source.delete();
+		}
+		System.out.println(failures == 0 ? "all checks passed" : failures + " mismatches");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	static Interval randomInterval(Random random, int range, String desc) {
+		int left = random.nextInt(range);
+		return new Interval(left, left + random.nextInt(Math.max(1, range/8)), desc);
+	}
+
+	/**
+	 * Checks that sortIntervals orders a copy of the intervals on each endpoint, and
+	 * keeps all of them.
+	 */
+	static void checkSort(ArrayList<Interval> intervals) {
+		IntervalTree tree = new IntervalTree(new ArrayList<Interval>());
+		ArrayList<Interval> left = new ArrayList<Interval>(intervals);
+		ArrayList<Interval> right = new ArrayList<Interval>(intervals);
+		tree.sortIntervals(left, 'l');
+		tree.sortIntervals(right, 'r');
+		int bad = mismatch(intervals, left) + mismatch(intervals, right);
+		for (int i=1; i < intervals.size(); i++) {
+			if (left.get(i-1).leftEndPoint > left.get(i).leftEndPoint) {
+				bad++;
+			}
+			if (right.get(i-1).rightEndPoint > right.get(i).rightEndPoint) {
+				bad++;
+			}
+		}
+		report("sort", bad);
+	}
+
+	/**
+	 * Deletes and inserts random intervals in a dynamic tree, and checks its queries
+	 * against a brute-force scan of the intervals it holds.
+	 */
+	static void checkDynamic(ArrayList<Interval> intervals, ArrayList<Interval> queries,
+			Random random, int range) {
+		DynamicIntervalTree dynamic = new DynamicIntervalTree();
+		ArrayList<Interval> held = new ArrayList<Interval>();
+		int bad = 0;
+		for (int i=0; i < intervals.size(); i++) {
+			if (!held.isEmpty() && random.nextInt(3) == 0) {
+				Interval gone = held.remove(random.nextInt(held.size()));
+				if (!dynamic.delete(gone)) {
+					bad++;
+				}
+			} else {
+				held.add(intervals.get(i));
+				dynamic.insert(intervals.get(i));
+			}
+			if (i % 16 == 0) {
+				Interval q = queries.get(random.nextInt(queries.size()));
+				bad += mismatch(bruteForce(held, q), dynamic.findIntersectingIntervals(q));
+			}
+		}
+		if (dynamic.size() != held.size()) {
+			bad++;
+		}
+		report("dynamic tree insert/delete", bad);
+	}
+
+	/**
+	 * Writes the intervals to an intervals file, and reads it back with IntervalFile.
+	 */
+	static IntervalFile writeAndRead(ArrayList<Interval> intervals, File file)
+	throws IOException {
+		PrintWriter pw = new PrintWriter(new FileWriter(file));
+		for (Interval interval: intervals) {
+			pw.println(interval.leftEndPoint + " " + interval.rightEndPoint + " " + interval.desc);
+		}
+		pw.close();
+		IntervalFile read = IntervalFile.read(file);
+		if (read.size() != intervals.size()) {
+			report("IntervalFile size", 1);
+		}
+		return read;
+	}
+
+	static ArrayList<Interval> bruteForce(ArrayList<Interval> intervals, Interval q) {
+		ArrayList<Interval> ret = new ArrayList<Interval>();
+		for (Interval interval: intervals) {
+			if (interval.intersects(q)) {
+				ret.add(interval);
+			}
+		}
+		return ret;
+	}
+
+	static boolean allIntersect(ArrayList<Interval> result, Interval q) {
+		for (Interval interval: result) {
+			if (!interval.intersects(q)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns 1 if two lists do not hold the same intervals, in any order, and 0 if they do.
+	 * Intervals are compared by endpoints and description, since the index reports copies.
+	 */
+	static int mismatch(ArrayList<Interval> expected, ArrayList<Interval> actual) {
+		if (expected.size() != actual.size()) {
+			return 1;
+		}
+		String[] e = new String[expected.size()], a = new String[actual.size()];
+		for (int i=0; i < e.length; i++) {
+			e[i] = expected.get(i).toString();
+			a[i] = actual.get(i).toString();
+		}
+		Arrays.sort(e);
+		Arrays.sort(a);
+		return Arrays.equals(e, a) ? 0 : 1;
+	}
+
+	static void report(String check, int mismatches) {
+		System.out.println(check + ": " + (mismatches == 0 ? "ok" : mismatches + " mismatches"));
+		failures += mismatches;
+	}
+}
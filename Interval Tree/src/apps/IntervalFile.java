@@ -0,0 +1,377 @@
+package apps;
+
+import structures.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Intervals read from an intervals file, with one interval per line: left endpoint,
+ * right endpoint and description, separated by white space. They are kept as arrays of
+ * endpoints and descriptions rather than as Interval objects.
+ *
+ * A large file is split into chunks that each start at the beginning of a line, and the
+ * chunks are read and parsed in parallel, straight from bytes into the arrays; the only
+ * objects created per line are the description strings. Blank lines are skipped.
+ *
+ * @author runb-cs112
+ */
+public class IntervalFile {
+
+	/**
+	 * Smallest chunk, in bytes; smaller files are read as one chunk
+	 */
+	static final int MIN_CHUNK = 1 << 20;
+
+	/**
+	 * Largest chunk, in bytes, which bounds the memory each parsing task holds
+	 */
+	static final int MAX_CHUNK = 1 << 24;
+
+	/**
+	 * Left endpoint of each interval
+	 */
+	int[] leftEndPoints;
+
+	/**
+	 * Right endpoint of each interval
+	 */
+	int[] rightEndPoints;
+
+	/**
+	 * Description of each interval
+	 */
+	String[] descs;
+
+	/**
+	 * Number of intervals
+	 */
+	int size;
+
+	/**
+	 * Reads an intervals file. Descriptions are decoded in the platform's default charset,
+	 * as a FileReader would.
+	 *
+	 * @param file Intervals file
+	 * @return Intervals in the file, in file order
+	 * @throws IOException If the file cannot be read, or a line is malformed; the message
+	 *         gives the byte offset of the line
+	 */
+	public static IntervalFile read(File file)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			long chunk = length / (4 * ForkJoinPool.getCommonPoolParallelism());
+			chunk = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, chunk));
+
+			// move each boundary forward to the start of a line
+			ArrayList<Long> starts = new ArrayList<Long>();
+			starts.add(0L);
+			for (long b=chunk; b < length; b += chunk) {
+				long start = nextLine(channel, Math.max(b, starts.get(starts.size()-1)));
+				if (start < length && start > starts.get(starts.size()-1)) {
+					starts.add(start);
+				}
+			}
+			starts.add(length);
+
+			Chunk[] chunks = new Chunk[starts.size()-1];
+			for (int i=0; i < chunks.length; i++) {
+				chunks[i] = new Chunk(file, channel, starts.get(i), starts.get(i+1));
+			}
+			if (chunks.length == 1) {
+				chunks[0].compute();
+			} else {
+				ForkJoinPool.commonPool().invoke(new Chunks(chunks));
+			}
+
+			IntervalFile result = new IntervalFile();
+			for (Chunk c : chunks) {
+				if (c.error != null) {
+					throw c.error;
+				}
+				result.size += c.size;
+			}
+			result.leftEndPoints = new int[result.size];
+			result.rightEndPoints = new int[result.size];
+			result.descs = new String[result.size];
+			int at = 0;
+			for (Chunk c : chunks) {
+				System.arraycopy(c.left, 0, result.leftEndPoints, at, c.size);
+				System.arraycopy(c.right, 0, result.rightEndPoints, at, c.size);
+				System.arraycopy(c.descs, 0, result.descs, at, c.size);
+				at += c.size;
+			}
+			return result;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the position just after the first newline at or after a position, or the
+	 * length of the file if there is none.
+	 */
+	private static long nextLine(FileChannel channel, long position)
+	throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+		while (true) {
+			buf.clear();
+			int n = channel.read(buf, position);
+			if (n < 0) {
+				return channel.size();
+			}
+			for (int i=0; i < n; i++) {
+				if (buf.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += n;
+		}
+	}
+
+	/**
+	 * Returns the number of intervals.
+	 *
+	 * @return Number of intervals
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Creates an Interval object for each interval.
+	 *
+	 * @return Array list of the intervals, in file order
+	 */
+	public ArrayList<Interval> intervals() {
+		ArrayList<Interval> ret = new ArrayList<Interval>(size);
+		for (int i=0; i < size; i++) {
+			ret.add(new Interval(leftEndPoints[i], rightEndPoints[i], descs[i]));
+		}
+		return ret;
+	}
+
+	/**
+	 * Builds an interval tree of the intervals, straight from the arrays.
+	 *
+	 * @return Interval tree
+	 */
+	public IntervalTree buildTree() {
+		return new IntervalTree(leftEndPoints, rightEndPoints, descs, size);
+	}
+
+	/**
+	 * Parses all chunks, in parallel.
+	 */
+	static class Chunks extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Chunks to parse
+		 */
+		Chunk[] chunks;
+
+		Chunks(Chunk[] chunks) {
+			this.chunks = chunks;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			invokeAll(chunks);
+		}
+	}
+
+	/**
+	 * Reads and parses the lines in one range of the file.
+	 */
+	static class Chunk extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * File, for error messages
+		 */
+		File file;
+
+		/**
+		 * Channel of the file, which is read at absolute positions
+		 */
+		FileChannel channel;
+
+		/**
+		 * Range of the file, starting at the beginning of a line
+		 */
+		long start, end;
+
+		/**
+		 * Parsed endpoints
+		 */
+		int[] left, right;
+
+		/**
+		 * Parsed descriptions
+		 */
+		String[] descs;
+
+		/**
+		 * Number of intervals parsed
+		 */
+		int size;
+
+		/**
+		 * Error that stopped parsing, or null
+		 */
+		IOException error;
+
+		Chunk(File file, FileChannel channel, long start, long end) {
+			this.file = file;
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			try {
+				parse(read());
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+
+		private byte[] read()
+		throws IOException {
+			byte[] bytes = new byte[(int)(end - start)];
+			ByteBuffer buf = ByteBuffer.wrap(bytes);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf, start + buf.position()) < 0) {
+					throw new IOException(file + " was truncated while being read");
+				}
+			}
+			return bytes;
+		}
+
+		private void parse(byte[] b)
+		throws IOException {
+			// start from a guess of 16 bytes per line, and grow as needed
+			int capacity = Math.max(16, b.length / 16);
+			left = new int[capacity];
+			right = new int[capacity];
+			descs = new String[capacity];
+			Charset cs = Charset.defaultCharset();
+			int i = 0, n = b.length;
+			while (i < n) {
+				int line = i;
+				i = skipSpace(b, i, n);
+				if (i == n || b[i] == '\n') {
+					// blank line
+					i++;
+					continue;
+				}
+				if (size == left.length) {
+					left = Arrays.copyOf(left, 2*size);
+					right = Arrays.copyOf(right, 2*size);
+					descs = Arrays.copyOf(descs, 2*size);
+				}
+				int j = number(b, i, n);
+				if (j < 0) {
+					throw malformed(line);
+				}
+				long l = value(b, i, j, line);
+				i = skipSpace(b, j, n);
+				j = number(b, i, n);
+				if (j < 0) {
+					throw malformed(line);
+				}
+				long r = value(b, i, j, line);
+				i = skipSpace(b, j, n);
+				j = i;
+				while (j < n && !isSpace(b[j]) && b[j] != '\n') {
+					j++;
+				}
+				if (j == i) {
+					throw malformed(line);
+				}
+				left[size] = (int)l;
+				right[size] = (int)r;
+				descs[size] = new String(b, i, j - i, cs);
+				size++;
+				// anything after the description is ignored, as StringTokenizer would
+				while (j < n && b[j] != '\n') {
+					j++;
+				}
+				i = j + 1;
+			}
+		}
+
+		/**
+		 * Returns the end of an optionally signed run of digits starting at i, or -1 if
+		 * there is none.
+		 */
+		private static int number(byte[] b, int i, int n) {
+			int j = i;
+			if (j < n && (b[j] == '-' || b[j] == '+')) {
+				j++;
+			}
+			int digits = j;
+			while (j < n && b[j] >= '0' && b[j] <= '9') {
+				j++;
+			}
+			if (j == digits || (j < n && !isSpace(b[j]) && b[j] != '\n')) {
+				return -1;
+			}
+			return j;
+		}
+
+		private long value(byte[] b, int i, int j, int line)
+		throws IOException {
+			boolean negative = b[i] == '-';
+			if (b[i] == '-' || b[i] == '+') {
+				i++;
+			}
+			long v = 0;
+			for (; i < j; i++) {
+				v = 10*v + (b[i] - '0');
+				if (v > 1L + Integer.MAX_VALUE) {
+					throw malformed(line);
+				}
+			}
+			v = negative ? -v : v;
+			if (v > Integer.MAX_VALUE || v < Integer.MIN_VALUE) {
+				throw malformed(line);
+			}
+			return v;
+		}
+
+		private static int skipSpace(byte[] b, int i, int n) {
+			while (i < n && isSpace(b[i])) {
+				i++;
+			}
+			return i;
+		}
+
+		private static boolean isSpace(byte c) {
+			return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+		}
+
+		private IOException malformed(int line) {
+			return new IOException("Malformed interval in " + file + " at byte " + (start + line));
+		}
+	}
+}
@@ -12,36 +12,23 @@ public class IntervalTreeDriver {
 	public static void main(String[] args) throws IOException {
 		System.out.print("Enter intervals file name => ");
 		String infile = keyboard.readLine();
-		BufferedReader br = new BufferedReader(new FileReader(infile));
-		ArrayList<Interval> intervals = readIntervals(br);
+		IntervalFile file = IntervalFile.read(new File(infile));
+		IntervalTree tree = file.buildTree();
+		// the Interval objects are only needed for the listing and the sorting demo
+		ArrayList<Interval> intervals = file.intervals();
 		System.out.println("Read the following intervals:");
 		for (Interval interval: intervals) {
 			System.out.println(interval);
 		}
 		ArrayList<Interval> interval1=intervals;
 		ArrayList<Interval> interval2=intervals;
-		IntervalTree tree = new IntervalTree(intervals);
 		tree.sortIntervals(interval1, 'l');
 		tree.sortIntervals(interval2, 'r');
-		System.out.println(tree.getSortedEndPoints(interval1, interval2));
+		System.out.println(Arrays.toString(tree.getSortedEndPoints(interval1, interval2)));
 		//performQueries(tree);
 		
 	}
 	
-	static ArrayList<Interval> readIntervals(BufferedReader br) throws IOException  {
-		String line;
-		ArrayList<Interval> ret = new ArrayList<Interval>();
-		
-		while ((line = br.readLine()) != null) {
-			StringTokenizer st = new StringTokenizer(line);
-			Interval intrvl = new Interval(
-					Integer.parseInt(st.nextToken()), 
-					Integer.parseInt(st.nextToken()), st.nextToken());
-			ret.add(intrvl);
-		}
-		return ret;
-	}
-	
 	static void performQueries(IntervalTree tree) throws IOException {
 		System.out.print("\nEnter an interval (e.g. 3 5) to intersect, quit to stop => ");
 		String schedule = keyboard.readLine();
@@ -0,0 +1,302 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Encapsulates an interval tree that intervals can be inserted into and deleted from.
+ * It is a balanced (AVL) binary search tree of intervals ordered on left endpoint, in which
+ * every node also keeps the largest right endpoint in its subtree. Insert and delete take
+ * O(log n) time, and findIntersectingIntervals has the same contract as in IntervalTree.
+ *
+ * An interval is identified by the object itself, not by its endpoints, so two equal
+ * intervals can be in the tree at once. The endpoints of an interval must not be changed
+ * while it is in the tree.
+ *
+ * @author runb-cs112
+ */
+public class DynamicIntervalTree {
+
+	/**
+	 * Node of the tree
+	 */
+	static class Node {
+
+		/**
+		 * Interval at this node
+		 */
+		Interval interval;
+
+		/**
+		 * Insertion number, which orders intervals with equal left endpoints
+		 */
+		long seq;
+
+		/**
+		 * Largest right endpoint of the intervals in this node's subtree
+		 */
+		int maxRight;
+
+		/**
+		 * Height of this node's subtree; 1 for a leaf
+		 */
+		int height;
+
+		/**
+		 * Children
+		 */
+		Node left, right;
+
+		Node(Interval interval, long seq) {
+			this.interval = interval;
+			this.seq = seq;
+			update();
+		}
+
+		/**
+		 * Recomputes height and maxRight from the children.
+		 */
+		void update() {
+			height = 1 + Math.max(height(left), height(right));
+			maxRight = interval.rightEndPoint;
+			if (left != null && left.maxRight > maxRight) {
+				maxRight = left.maxRight;
+			}
+			if (right != null && right.maxRight > maxRight) {
+				maxRight = right.maxRight;
+			}
+		}
+	}
+
+	/**
+	 * Root of the tree
+	 */
+	Node root;
+
+	/**
+	 * Node of each interval in the tree
+	 */
+	IdentityHashMap<Interval,Node> nodes;
+
+	/**
+	 * Insertion number for the next interval
+	 */
+	long nextSeq;
+
+	/**
+	 * Initializes an empty tree.
+	 */
+	public DynamicIntervalTree() {
+		root = null;
+		nodes = new IdentityHashMap<Interval,Node>();
+		nextSeq = 0;
+	}
+
+	/**
+	 * Builds a tree from a set of intervals in O(n log n) time: the intervals are sorted
+	 * on left endpoint as in IntervalTree, and the balanced tree is then built directly from
+	 * the sorted order, without any rotations. The list is not changed.
+	 *
+	 * @param intervals Array list of intervals
+	 */
+	public DynamicIntervalTree(ArrayList<Interval> intervals) {
+		this();
+		Interval[] items = intervals.toArray(new Interval[intervals.size()]);
+		long[] keys = new long[items.length];
+		for (int i=0; i < items.length; i++) {
+			keys[i] = IntervalTree.key(items[i].leftEndPoint, i);
+		}
+		IntervalTree.sortKeys(keys);
+		Interval[] sorted = new Interval[items.length];
+		for (int i=0; i < items.length; i++) {
+			sorted[i] = items[(int)keys[i]];
+		}
+		root = build(sorted, 0, sorted.length);
+		nextSeq = sorted.length;
+	}
+
+	/**
+	 * Builds a balanced subtree from a range of intervals sorted on left endpoint.
+	 */
+	private Node build(Interval[] sorted, int from, int to) {
+		if (from == to) {
+			return null;
+		}
+		int mid = (from + to) >>> 1;
+		Node n = new Node(sorted[mid], mid);
+		n.left = build(sorted, from, mid);
+		n.right = build(sorted, mid+1, to);
+		n.update();
+		nodes.put(sorted[mid], n);
+		return n;
+	}
+
+	/**
+	 * Returns the number of intervals in the tree.
+	 *
+	 * @return Number of intervals
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Inserts an interval.
+	 *
+	 * @param iv Interval to insert
+	 * @return True if it was inserted, false if this same interval object is already in
+	 *         the tree
+	 */
+	public boolean insert(Interval iv) {
+		if (nodes.containsKey(iv)) {
+			return false;
+		}
+		Node n = new Node(iv, nextSeq++);
+		nodes.put(iv, n);
+		root = insert(root, n);
+		return true;
+	}
+
+	private Node insert(Node t, Node n) {
+		if (t == null) {
+			return n;
+		}
+		if (compare(n, t) < 0) {
+			t.left = insert(t.left, n);
+		} else {
+			t.right = insert(t.right, n);
+		}
+		return balance(t);
+	}
+
+	/**
+	 * Deletes an interval.
+	 *
+	 * @param iv Interval to delete; it is matched by identity
+	 * @return True if it was deleted, false if it was not in the tree
+	 */
+	public boolean delete(Interval iv) {
+		Node n = nodes.remove(iv);
+		if (n == null) {
+			return false;
+		}
+		root = delete(root, n);
+		return true;
+	}
+
+	private Node delete(Node t, Node n) {
+		int c = compare(n, t);
+		if (c < 0) {
+			t.left = delete(t.left, n);
+		} else if (c > 0) {
+			t.right = delete(t.right, n);
+		} else {
+			if (t.left == null) {
+				return t.right;
+			}
+			if (t.right == null) {
+				return t.left;
+			}
+			// replace t with the smallest node of its right subtree
+			Node m = t.right;
+			while (m.left != null) {
+				m = m.left;
+			}
+			m.right = deleteMin(t.right);
+			m.left = t.left;
+			t = m;
+		}
+		return balance(t);
+	}
+
+	private Node deleteMin(Node t) {
+		if (t.left == null) {
+			return t.right;
+		}
+		t.left = deleteMin(t.left);
+		return balance(t);
+	}
+
+	/**
+	 * Gets all intervals in this tree that intersect with a given interval.
+	 *
+	 * @param q The query interval for which intersections are to be found
+	 * @return Array list of all intersecting intervals; size is 0 if there are no intersections
+	 */
+	public ArrayList<Interval> findIntersectingIntervals(Interval q) {
+		ArrayList<Interval> result = new ArrayList<Interval>();
+		query(root, q, result);
+		return result;
+	}
+
+	private static void query(Node t, Interval q, ArrayList<Interval> result) {
+		// no interval in a subtree reaches q if its largest right endpoint is left of q
+		while (t != null && t.maxRight >= q.leftEndPoint) {
+			query(t.left, q, result);
+			if (t.interval.leftEndPoint > q.rightEndPoint) {
+				// neither does any interval at or to the right of t
+				return;
+			}
+			if (t.interval.rightEndPoint >= q.leftEndPoint) {
+				result.add(t.interval);
+			}
+			t = t.right;
+		}
+	}
+
+	/**
+	 * Orders nodes on left endpoint, then on insertion number.
+	 */
+	private static int compare(Node x, Node y) {
+		if (x.interval.leftEndPoint != y.interval.leftEndPoint) {
+			return x.interval.leftEndPoint < y.interval.leftEndPoint ? -1 : 1;
+		}
+		return x.seq < y.seq ? -1 : x.seq > y.seq ? 1 : 0;
+	}
+
+	static int height(Node t) {
+		return t == null ? 0 : t.height;
+	}
+
+	/**
+	 * Restores the AVL balance of a node whose subtrees differ in height by at most 2, and
+	 * updates its height and maxRight.
+	 *
+	 * @return Root of the balanced subtree
+	 */
+	private static Node balance(Node t) {
+		int b = height(t.left) - height(t.right);
+		if (b > 1) {
+			if (height(t.left.left) < height(t.left.right)) {
+				t.left = rotateLeft(t.left);
+			}
+			return rotateRight(t);
+		}
+		if (b < -1) {
+			if (height(t.right.right) < height(t.right.left)) {
+				t.right = rotateRight(t.right);
+			}
+			return rotateLeft(t);
+		}
+		t.update();
+		return t;
+	}
+
+	private static Node rotateRight(Node t) {
+		Node l = t.left;
+		t.left = l.right;
+		t.update();
+		l.right = t;
+		l.update();
+		return l;
+	}
+
+	private static Node rotateLeft(Node t) {
+		Node r = t.right;
+		t.right = r.left;
+		t.update();
+		r.left = t;
+		r.update();
+		return r;
+	}
+}
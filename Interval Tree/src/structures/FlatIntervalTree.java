@@ -0,0 +1,233 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * An immutable interval tree stored in flat arrays rather than in linked node objects.
+ * The nodes of an IntervalTree are numbered in breadth-first order, and each node's
+ * split value is kept in a float array at its number. The two children of a node are
+ * next to each other in that order, so one int array gives both. The left sorted interval
+ * lists of all the nodes are concatenated, in node order, into one array of intervals, and
+ * an offset array gives each node's range in it. The right sorted lists are kept as a
+ * permutation of each node's range, by interval number. The endpoints that the queries
+ * compare are copied into int arrays alongside, so a query scans primitive arrays and
+ * only reads an Interval object when it reports it. The walks are those of IntervalWalk.
+ *
+ * @author runb-cs112
+ */
+public class FlatIntervalTree extends IntervalWalk {
+
+	/**
+	 * Split value of each node
+	 */
+	float[] splitValues;
+
+	/**
+	 * Number of the left child of each node, whose right child is the next number; -1 for a leaf
+	 */
+	int[] children;
+
+	/**
+	 * Start of each node's intervals in the flattened lists; the last entry is the number
+	 * of intervals
+	 */
+	int[] offsets;
+
+	/**
+	 * Intervals of all nodes, each node's sorted on left endpoint; an interval's number is
+	 * its position here
+	 */
+	Interval[] intervals;
+
+	/**
+	 * Left endpoint of each interval
+	 */
+	int[] leftEndPoints;
+
+	/**
+	 * Numbers of the intervals of all nodes, each node's sorted on right endpoint
+	 */
+	int[] rightOrder;
+
+	/**
+	 * Right endpoint of each interval, in right sorted order
+	 */
+	int[] rightOrderEndPoints;
+
+	/**
+	 * Constructs the tree for a set of intervals.
+	 *
+	 * @param intervals Array list of intervals; it is sorted on left endpoints, as by the
+	 *        IntervalTree constructor
+	 */
+	public FlatIntervalTree(ArrayList<Interval> intervals) {
+		this(new IntervalTree(intervals));
+	}
+
+	/**
+	 * Constructs a flat copy of an interval tree. The copy does not refer to the tree's nodes.
+	 *
+	 * @param tree Interval tree
+	 */
+	public FlatIntervalTree(IntervalTree tree) {
+		// number the nodes in breadth-first order; the list serves as the queue
+		ArrayList<IntervalTreeNode> nodes = new ArrayList<IntervalTreeNode>();
+		if (tree.getRoot() != null) {
+			nodes.add(tree.getRoot());
+		}
+		for (int i=0; i < nodes.size(); i++) {
+			IntervalTreeNode t = nodes.get(i);
+			if (t.leftChild != null) {
+				nodes.add(t.leftChild);
+				nodes.add(t.rightChild);
+			}
+		}
+
+		int n = nodes.size();
+		splitValues = new float[n];
+		children = new int[n];
+		offsets = new int[n+1];
+		int next = 1;
+		int count = 0;
+		for (int i=0; i < n; i++) {
+			IntervalTreeNode t = nodes.get(i);
+			splitValues[i] = t.splitValue;
+			if (t.leftChild != null) {
+				children[i] = next;
+				next += 2;
+			} else {
+				children[i] = -1;
+			}
+			offsets[i] = count;
+			if (t.leftIntervals != null) {
+				count += t.leftIntervals.size();
+			}
+		}
+		offsets[n] = count;
+
+		intervals = new Interval[count];
+		leftEndPoints = new int[count];
+		rightOrder = new int[count];
+		rightOrderEndPoints = new int[count];
+		IdentityHashMap<Interval,Integer> numbers = new IdentityHashMap<Interval,Integer>(2*count);
+		for (int i=0; i < n; i++) {
+			IntervalTreeNode t = nodes.get(i);
+			int k = offsets[i];
+			if (t.leftIntervals != null) {
+				for (int j=0; j < t.leftIntervals.size(); j++) {
+					intervals[k+j] = t.leftIntervals.get(j);
+					leftEndPoints[k+j] = t.leftIntervals.get(j).leftEndPoint;
+					numbers.put(intervals[k+j], k+j);
+				}
+			}
+			if (t.rightIntervals != null) {
+				for (int j=0; j < t.rightIntervals.size(); j++) {
+					rightOrder[k+j] = numbers.get(t.rightIntervals.get(j));
+					rightOrderEndPoints[k+j] = t.rightIntervals.get(j).rightEndPoint;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of intervals in this tree.
+	 *
+	 * @return Number of intervals
+	 */
+	public int size() {
+		return intervals.length;
+	}
+
+	/**
+	 * Gets all intervals in this tree that intersect with a given interval.
+	 *
+	 * @param q The query interval for which intersections are to be found
+	 * @return Array list of all intersecting intervals; size is 0 if there are no intersections
+	 */
+	public ArrayList<Interval> findIntersectingIntervals(Interval q) {
+		ArrayList<Interval> result = new ArrayList<Interval>();
+		query(q, result);
+		return result;
+	}
+
+	/**
+	 * Gets all intervals in this tree that contain a given point, and passes each one to a
+	 * visitor. Nothing is allocated.
+	 *
+	 * @param point The point for which containing intervals are to be found
+	 * @param visitor Visitor that is given each containing interval
+	 * @return Number of containing intervals
+	 */
+	public int stab(int point, IntervalVisitor visitor) {
+		return stab(point, visitor, null);
+	}
+
+	/**
+	 * Gets all intervals in this tree that contain a given point, and adds them to a list
+	 * created by the caller, which is not cleared first.
+	 *
+	 * @param point The point for which containing intervals are to be found
+	 * @param result Array list to which the containing intervals are added
+	 * @return Number of containing intervals
+	 */
+	public int stab(int point, ArrayList<Interval> result) {
+		return stab(point, null, result);
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#numNodes()
+	 */
+	int numNodes() {
+		return splitValues.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#splitValue(int)
+	 */
+	float splitValue(int node) {
+		return splitValues[node];
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#leftChild(int)
+	 */
+	int leftChild(int node) {
+		return children[node];
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#offset(int)
+	 */
+	int offset(int node) {
+		return offsets[node];
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#leftEndPoint(int)
+	 */
+	int leftEndPoint(int k) {
+		return leftEndPoints[k];
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#rightOrder(int)
+	 */
+	int rightOrder(int k) {
+		return rightOrder[k];
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#rightOrderEndPoint(int)
+	 */
+	int rightOrderEndPoint(int k) {
+		return rightOrderEndPoints[k];
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#interval(int)
+	 */
+	Interval interval(int k) {
+		return intervals[k];
+	}
+}
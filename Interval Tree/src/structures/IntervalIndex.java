@@ -0,0 +1,422 @@
+package structures;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * An interval tree saved to a file, which is memory-mapped and queried in place, so that
+ * opening it reads nothing but its header, and processes that open the same file share
+ * its pages. The file holds the arrays of a FlatIntervalTree, one after another, and the
+ * descriptions of the intervals; all numbers are big-endian.
+ *
+ * <pre>
+ * header        int magic, int version, long source length, long source last modified,
+ *               int nodes, int intervals, long description bytes
+ * float[nodes]  split value of each node, in breadth-first order
+ * int[nodes]    number of the left child of each node, or -1
+ * int[nodes+1]  start of each node's intervals
+ * int[n]        left endpoint of each interval, each node's sorted on left endpoint
+ * int[n]        right endpoint of each interval, in the same order
+ * int[n]        each node's intervals sorted on right endpoint, by their number above
+ * int[n]        right endpoint of each interval, in that order
+ * int[n+1]      start of each interval's description
+ * bytes         descriptions, UTF-8
+ * </pre>
+ *
+ * Intervals are numbered by their position in the left sorted order. A query creates a
+ * new Interval for each interval it reports, so the reported intervals are equal to, but
+ * not the same objects as, those the tree was built from. A null description is saved as
+ * an empty one. The walks are those of IntervalWalk, over the mapped arrays.
+ *
+ * @author runb-cs112
+ */
+public class IntervalIndex extends IntervalWalk {
+
+	/**
+	 * First int of every index file ("ITIX")
+	 */
+	static final int MAGIC = 0x49544958;
+
+	/**
+	 * Version of the format
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Size of the header, in bytes
+	 */
+	static final int HEADER = 40;
+
+	/**
+	 * Split value of each node
+	 */
+	FloatBuffer splitValues;
+
+	/**
+	 * Number of the left child of each node, whose right child is the next number; -1 for a leaf
+	 */
+	IntBuffer children;
+
+	/**
+	 * Start of each node's intervals; the last entry is the number of intervals
+	 */
+	IntBuffer offsets;
+
+	/**
+	 * Left endpoint of each interval, in left sorted order
+	 */
+	IntBuffer leftEndPoints;
+
+	/**
+	 * Right endpoint of each interval, in left sorted order
+	 */
+	IntBuffer rightEndPoints;
+
+	/**
+	 * Number of each interval in right sorted order
+	 */
+	IntBuffer rightOrder;
+
+	/**
+	 * Right endpoint of each interval, in right sorted order
+	 */
+	IntBuffer rightOrderEndPoints;
+
+	/**
+	 * Start of each interval's description in descs
+	 */
+	IntBuffer descOffsets;
+
+	/**
+	 * Descriptions, UTF-8
+	 */
+	ByteBuffer descs;
+
+	/**
+	 * Number of nodes
+	 */
+	int numNodes;
+
+	/**
+	 * Number of intervals
+	 */
+	int numIntervals;
+
+	/**
+	 * Returns the index file kept next to an intervals file.
+	 *
+	 * @param source Intervals file
+	 * @return Index file: the same name with .idx appended
+	 */
+	public static File indexFile(File source) {
+		return new File(source.getPath() + ".idx");
+	}
+
+	/**
+	 * Tells whether an index file exists, has the current version, and was saved from the
+	 * current contents of an intervals file. Only the header is read.
+	 *
+	 * @param index Index file
+	 * @param source Intervals file the tree was built from, or null not to check it
+	 * @return True if the index can be opened
+	 */
+	public static boolean isCurrent(File index, File source) {
+		if (!index.isFile() || index.length() < HEADER) {
+			return false;
+		}
+		try {
+			RandomAccessFile raf = new RandomAccessFile(index, "r");
+			try {
+				ByteBuffer header = readHeader(raf.getChannel());
+				if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+					return false;
+				}
+				return source == null || (header.getLong(8) == source.length() &&
+						header.getLong(16) == source.lastModified());
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Saves an interval tree to an index file. The file is written under a temporary name
+	 * that then replaces the index file, so a reader never sees half a file.
+	 *
+	 * @param tree Interval tree
+	 * @param index Index file
+	 * @param source Intervals file the tree was built from, or null
+	 * @throws IOException If the file cannot be written, or the descriptions take more
+	 *         than 2GB
+	 */
+	public static void save(IntervalTree tree, File index, File source)
+	throws IOException {
+		FlatIntervalTree flat = new FlatIntervalTree(tree);
+		int n = flat.size();
+		int nodes = flat.splitValues.length;
+
+		byte[][] bytes = new byte[n][];
+		long descLength = 0;
+		for (int i=0; i < n; i++) {
+			String desc = flat.intervals[i].desc;
+			bytes[i] = desc == null ? new byte[0] : desc.getBytes(StandardCharsets.UTF_8);
+			descLength += bytes[i].length;
+		}
+		if (descLength > Integer.MAX_VALUE) {
+			throw new IOException("Interval descriptions take " + descLength +
+					" bytes, more than an index can hold");
+		}
+
+		File temp = new File(index.getPath() + ".tmp");
+		FileOutputStream fos = new FileOutputStream(temp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(source == null ? 0 : source.length());
+			out.writeLong(source == null ? 0 : source.lastModified());
+			out.writeInt(nodes);
+			out.writeInt(n);
+			out.writeLong(descLength);
+			for (int i=0; i < nodes; i++) {
+				out.writeFloat(flat.splitValues[i]);
+			}
+			for (int i=0; i < nodes; i++) {
+				out.writeInt(flat.children[i]);
+			}
+			for (int i=0; i <= nodes; i++) {
+				out.writeInt(flat.offsets[i]);
+			}
+			for (int i=0; i < n; i++) {
+				out.writeInt(flat.leftEndPoints[i]);
+			}
+			for (int i=0; i < n; i++) {
+				out.writeInt(flat.intervals[i].rightEndPoint);
+			}
+			for (int i=0; i < n; i++) {
+				out.writeInt(flat.rightOrder[i]);
+			}
+			for (int i=0; i < n; i++) {
+				out.writeInt(flat.rightOrderEndPoints[i]);
+			}
+			int start = 0;
+			for (int i=0; i < n; i++) {
+				out.writeInt(start);
+				start += bytes[i].length;
+			}
+			out.writeInt(start);
+			for (int i=0; i < n; i++) {
+				out.write(bytes[i]);
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+		if (!temp.renameTo(index)) {
+			// some platforms will not rename over an existing file
+			index.delete();
+			if (!temp.renameTo(index)) {
+				temp.delete();
+				throw new IOException("Cannot replace " + index);
+			}
+		}
+	}
+
+	/**
+	 * Opens an index file by mapping it. Only the header is read; the rest is paged in as
+	 * queries touch it.
+	 *
+	 * @param index Index file
+	 * @return Index that answers queries from the file
+	 * @throws IOException If the file cannot be read, or is not an index of the current
+	 *         version, or its length does not match its header
+	 */
+	public static IntervalIndex open(File index)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(index, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = readHeader(channel);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException(index + " is not an interval index");
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException(index + " has version " + header.getInt(4) +
+						", expected " + VERSION);
+			}
+			IntervalIndex ix = new IntervalIndex();
+			ix.numNodes = header.getInt(24);
+			ix.numIntervals = header.getInt(28);
+			long descLength = header.getLong(32);
+			long nodes = ix.numNodes, n = ix.numIntervals;
+			if (nodes < 0 || n < 0 || descLength < 0 ||
+					channel.size() != HEADER + 4*(3*nodes + 1) + 4*(5*n + 1) + descLength) {
+				throw new IOException(index + " is truncated or corrupt");
+			}
+			long position = HEADER;
+			ix.splitValues = map(channel, position, 4*nodes).asFloatBuffer();
+			position += 4*nodes;
+			ix.children = map(channel, position, 4*nodes).asIntBuffer();
+			position += 4*nodes;
+			ix.offsets = map(channel, position, 4*(nodes+1)).asIntBuffer();
+			position += 4*(nodes+1);
+			ix.leftEndPoints = map(channel, position, 4*n).asIntBuffer();
+			position += 4*n;
+			ix.rightEndPoints = map(channel, position, 4*n).asIntBuffer();
+			position += 4*n;
+			ix.rightOrder = map(channel, position, 4*n).asIntBuffer();
+			position += 4*n;
+			ix.rightOrderEndPoints = map(channel, position, 4*n).asIntBuffer();
+			position += 4*n;
+			ix.descOffsets = map(channel, position, 4*(n+1)).asIntBuffer();
+			position += 4*(n+1);
+			ix.descs = map(channel, position, descLength);
+			return ix;
+		} finally {
+			// mappings stay valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size)
+	throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Index section of " + size + " bytes is too large to map");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+
+	private static ByteBuffer readHeader(FileChannel channel)
+	throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				throw new IOException("Index header is truncated");
+			}
+		}
+		return header;
+	}
+
+	/**
+	 * Returns the number of intervals in this index.
+	 *
+	 * @return Number of intervals
+	 */
+	public int size() {
+		return numIntervals;
+	}
+
+	/**
+	 * Returns an interval of this index, with its description.
+	 *
+	 * @param i Number of the interval, in left sorted order
+	 * @return New Interval object
+	 */
+	Interval interval(int i) {
+		int from = descOffsets.get(i), to = descOffsets.get(i+1);
+		byte[] b = new byte[to - from];
+		for (int k=0; k < b.length; k++) {
+			b[k] = descs.get(from + k);
+		}
+		return new Interval(leftEndPoints.get(i), rightEndPoints.get(i),
+				new String(b, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Gets all intervals in this index that intersect with a given interval.
+	 *
+	 * @param q The query interval for which intersections are to be found
+	 * @return Array list of all intersecting intervals; size is 0 if there are no intersections
+	 */
+	public ArrayList<Interval> findIntersectingIntervals(Interval q) {
+		ArrayList<Interval> result = new ArrayList<Interval>();
+		query(q, result);
+		return result;
+	}
+
+	/**
+	 * Gets all intervals in this index that contain a given point, and passes each one to
+	 * a visitor.
+	 *
+	 * @param point The point for which containing intervals are to be found
+	 * @param visitor Visitor that is given each containing interval
+	 * @return Number of containing intervals
+	 */
+	public int stab(int point, IntervalVisitor visitor) {
+		return stab(point, visitor, null);
+	}
+
+	/**
+	 * Gets all intervals in this index that contain a given point, and adds them to a list
+	 * created by the caller, which is not cleared first.
+	 *
+	 * @param point The point for which containing intervals are to be found
+	 * @param result Array list to which the containing intervals are added
+	 * @return Number of containing intervals
+	 */
+	public int stab(int point, ArrayList<Interval> result) {
+		return stab(point, null, result);
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#numNodes()
+	 */
+	int numNodes() {
+		return numNodes;
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#splitValue(int)
+	 */
+	float splitValue(int node) {
+		return splitValues.get(node);
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#leftChild(int)
+	 */
+	int leftChild(int node) {
+		return children.get(node);
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#offset(int)
+	 */
+	int offset(int node) {
+		return offsets.get(node);
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#leftEndPoint(int)
+	 */
+	int leftEndPoint(int k) {
+		return leftEndPoints.get(k);
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#rightOrder(int)
+	 */
+	int rightOrder(int k) {
+		return rightOrder.get(k);
+	}
+
+	/* (non-Javadoc)
+	 * @see structures.IntervalWalk#rightOrderEndPoint(int)
+	 */
+	int rightOrderEndPoint(int k) {
+		return rightOrderEndPoints.get(k);
+	}
+}
@@ -1,6 +1,9 @@
 package structures;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Encapsulates an interval tree.
@@ -14,6 +17,16 @@ public class IntervalTree {
 	 */
 	IntervalTreeNode root;
 	
+	/**
+	 * Number of intervals above which sorting is done in parallel
+	 */
+	static final int PARALLEL_SORT_MIN = 1 << 16;
+	
+	/**
+	 * Number of queries in a batch above which the batch is split across cores
+	 */
+	static final int PARALLEL_QUERY_MIN = 1 << 13;
+	
 	/**
 	 * Constructs entire interval tree from set of input intervals. Constructing the tree
 	 * means building the interval tree structure and mapping the intervals to the nodes.
@@ -22,22 +35,62 @@ public class IntervalTree {
 	 */
 	public IntervalTree(ArrayList<Interval> intervals) {
 		
-		// make a copy of intervals to use for right sorting
-		ArrayList<Interval> intervalsRight = new ArrayList<Interval>(intervals.size());
-		for (Interval iv : intervals) {
-			intervalsRight.add(iv);
-		}
-		
 		// rename input intervals for left sorting
 		ArrayList<Interval> intervalsLeft = intervals;
 		
-		// sort intervals on left and right end points
-		sortIntervals(intervalsLeft, 'l');
-		sortIntervals(intervalsRight,'r');
+		// sort intervals on left end points in place, and into a copy on right end points,
+		// both from one pass over the intervals
+		ArrayList<Interval> intervalsRight = new ArrayList<Interval>(intervals.size());
+		sortIntervals(intervalsLeft, intervalsRight);
+		
+		build(intervalsLeft, intervalsRight);
+	}
+	
+	/**
+	 * Constructs entire interval tree from intervals given as arrays of endpoints and
+	 * descriptions, as read by a loader that does not create Interval objects. The
+	 * endpoints are sorted as primitive keys, and each Interval is created once, when it
+	 * is put in sorted order.
+	 * 
+	 * @param leftEndPoints Left endpoint of each interval
+	 * @param rightEndPoints Right endpoint of each interval
+	 * @param descs Description of each interval
+	 * @param n Number of intervals; only the first n entries of each array are used
+	 */
+	public IntervalTree(int[] leftEndPoints, int[] rightEndPoints, String[] descs, int n) {
+		long[] leftKeys = new long[n];
+		long[] rightKeys = new long[n];
+		for (int i=0; i < n; i++) {
+			leftKeys[i] = key(leftEndPoints[i], i);
+			rightKeys[i] = key(rightEndPoints[i], i);
+		}
+		sortKeys(leftKeys);
+		sortKeys(rightKeys);
+		Interval[] items = new Interval[n];
+		ArrayList<Interval> intervalsLeft = new ArrayList<Interval>(n);
+		for (int i=0; i < n; i++) {
+			int k = (int)leftKeys[i];
+			items[k] = new Interval(leftEndPoints[k], rightEndPoints[k], descs[k]);
+			intervalsLeft.add(items[k]);
+		}
+		ArrayList<Interval> intervalsRight = new ArrayList<Interval>(n);
+		for (int i=0; i < n; i++) {
+			intervalsRight.add(items[(int)rightKeys[i]]);
+		}
+		
+		build(intervalsLeft, intervalsRight);
+	}
+	
+	/**
+	 * Builds the tree structure and maps the intervals to its nodes.
+	 * 
+	 * @param intervalsLeft Array list of intervals sorted according to left endpoints
+	 * @param intervalsRight Array list of intervals sorted according to right endpoints
+	 */
+	private void build(ArrayList<Interval> intervalsLeft, ArrayList<Interval> intervalsRight) {
 		
 		// get sorted list of end points without duplicates
-		ArrayList<Integer> sortedEndPoints = 
-							getSortedEndPoints(intervalsLeft, intervalsRight);
+		int[] sortedEndPoints = getSortedEndPoints(intervalsLeft, intervalsRight);
 		
 		// build the tree nodes
 		root = buildTreeNodes(sortedEndPoints);
@@ -57,175 +110,135 @@ public class IntervalTree {
 	
 	/**
 	 * Sorts a set of intervals in place, according to left or right endpoints.  
-	 * At the end of the method, the parameter array list is a sorted list. 
+	 * At the end of the method, the parameter array list is a sorted list. Intervals
+	 * with equal endpoints keep their relative order. Runs in O(n log n) time, sorting
+	 * primitive keys rather than Interval objects.
 	 * 
 	 * @param intervals Array list of intervals to be sorted.
 	 * @param lr If 'l', then sort is on left endpoints; if 'r', sort is on right endpoints
 	 */
 	public void sortIntervals(ArrayList<Interval> intervals, char lr) {
-		// COMPLETE THIS METHOD
-		if(lr=='l'){
-			int length=intervals.size();
-			int smallest=intervals.get(0).leftEndPoint;
-			int indexofsmallest=0;
-			for(int i=length;i>0;i--){
-				smallest=intervals.get(0).leftEndPoint;
-				indexofsmallest=0;
-				for(int j=0;j<=i-1;j++){
-					if(intervals.get(j).leftEndPoint<=smallest){
-						smallest=intervals.get(j).leftEndPoint;
-						indexofsmallest=j;
-					}
-				}
-				Interval temp=intervals.remove(indexofsmallest);
-				intervals.add(temp);
-			}
+		if (lr != 'l' && lr != 'r') {
+			return;
 		}
-		else if(lr=='r'){
-			int length=intervals.size();
-			int smallest=intervals.get(0).rightEndPoint;
-			int indexofsmallest=0;
-			for(int i=length;i>0;i--){
-				smallest=intervals.get(0).rightEndPoint;
-				indexofsmallest=0;
-				for(int j=0;j<=i-1;j++){
-					if(intervals.get(j).rightEndPoint<=smallest){
-						smallest=intervals.get(j).rightEndPoint;
-						indexofsmallest=j;
-					}
-				}
-				Interval temp=intervals.remove(indexofsmallest);
-				intervals.add(temp);
-			}
+		Interval[] items = intervals.toArray(new Interval[intervals.size()]);
+		long[] keys = new long[items.length];
+		for (int i=0; i < items.length; i++) {
+			keys[i] = key(lr == 'l' ? items[i].leftEndPoint : items[i].rightEndPoint, i);
+		}
+		sortKeys(keys);
+		for (int i=0; i < items.length; i++) {
+			intervals.set(i, items[(int)keys[i]]);
 		}
 	}
 	
 	/**
-	 * Given a set of intervals (left sorted and right sorted), extracts the left and right end points,
-	 * and returns a sorted list of the combined end points without duplicates.
+	 * Sorts a set of intervals in place on left endpoints, and adds them to another list
+	 * sorted on right endpoints. Both orders come from a single pass over the intervals.
 	 * 
-	 * @param leftSortedIntervals Array list of intervals sorted according to left endpoints
-	 * @param rightSortedIntervals Array list of intervals sorted according to right endpoints
-	 * @return Sorted array list of all endpoints without duplicates
+	 * @param intervals Array list of intervals, sorted on left endpoints at the end
+	 * @param rightSorted Empty array list that receives the intervals sorted on right endpoints
 	 */
-	public ArrayList<Integer> getSortedEndPoints(ArrayList<Interval> leftSortedIntervals, ArrayList<Interval> rightSortedIntervals) {
-		// COMPLETE THIS METHOD
-		// THE FOLLOWING LINE HAS BEEN ADDED TO MAKE THE PROGRAM COMPILE
-		ArrayList<Integer> sortedLEndPoints=new ArrayList<Integer>();
-		ArrayList<Integer> sortedREndPoints=new ArrayList<Integer>();
-		ArrayList<Integer> sortedEndPoints=new ArrayList<Integer>();
-		for(int i=0;i<=leftSortedIntervals.size()-1;i++){
-			int value=leftSortedIntervals.get(i).leftEndPoint;
-			if(sortedLEndPoints.contains(value)){
-				continue;
-			}
-			else{
-				sortedLEndPoints.add(value);
-			}
-		}
-		for(int i=0;i<=rightSortedIntervals.size()-1;i++){
-			int value=rightSortedIntervals.get(i).rightEndPoint;
-			if(sortedREndPoints.contains(value)){
-				continue;
-			}
-			else{
-				sortedREndPoints.add(value);
-			}
+	void sortIntervals(ArrayList<Interval> intervals, ArrayList<Interval> rightSorted) {
+		Interval[] items = intervals.toArray(new Interval[intervals.size()]);
+		long[] leftKeys = new long[items.length];
+		long[] rightKeys = new long[items.length];
+		for (int i=0; i < items.length; i++) {
+			leftKeys[i] = key(items[i].leftEndPoint, i);
+			rightKeys[i] = key(items[i].rightEndPoint, i);
 		}
-		int i=0;
-		int j=0;
-		while(i<=sortedLEndPoints.size()-1&&j<=sortedREndPoints.size()-1){
-			if(sortedLEndPoints.get(i)<sortedREndPoints.get(j)){
-				if(sortedEndPoints.contains(sortedLEndPoints.get(i))){
-					i++;
-					continue;
-				}
-				else{
-				sortedEndPoints.add(sortedLEndPoints.get(i));
-				i++;
-				}
-			}
-			else if(sortedLEndPoints.get(i)>sortedREndPoints.get(j)){
-				if(sortedEndPoints.contains(sortedREndPoints.get(j))){
-					j++;
-					continue;
-				}
-				else{
-				sortedEndPoints.add(sortedREndPoints.get(j));
-				j++;
-				}
-			}
-			else{
-				if(sortedEndPoints.contains(sortedLEndPoints.get(i))){
-					i++;
-					j++;
-					continue;
-				}
-				else{
-				sortedEndPoints.add(sortedLEndPoints.get(i));
-				i++;
-				j++;
-				}
-			}
+		sortKeys(leftKeys);
+		sortKeys(rightKeys);
+		for (int i=0; i < items.length; i++) {
+			intervals.set(i, items[(int)leftKeys[i]]);
+			rightSorted.add(items[(int)rightKeys[i]]);
 		}
-		while(i<=sortedLEndPoints.size()-1){
-			if(sortedEndPoints.contains(sortedLEndPoints.get(i))){
-				i++;
-				continue;
-			}
-			else{
-				sortedEndPoints.add(sortedLEndPoints.get(i));
-				i++;
-			}
+	}
+	
+	/**
+	 * Packs an endpoint and the position of its interval into one sort key, so that
+	 * sorting the keys as primitive longs sorts on the endpoint, and ties keep their
+	 * original order. The position is the low 32 bits of the key.
+	 */
+	static long key(int endPoint, int position) {
+		return ((long)endPoint << 32) | position;
+	}
+	
+	/**
+	 * Sorts keys in ascending order, in parallel if there are many of them.
+	 */
+	static void sortKeys(long[] keys) {
+		if (keys.length >= PARALLEL_SORT_MIN) {
+			Arrays.parallelSort(keys);
+		} else {
+			Arrays.sort(keys);
 		}
-		while(j<=sortedREndPoints.size()-1){
-			if(sortedEndPoints.contains(sortedREndPoints.get(j))){
-				j++;
-				continue;
+	}
+	
+	/**
+	 * Given a set of intervals (left sorted and right sorted), extracts the left and right end points,
+	 * and returns a sorted list of the combined end points without duplicates. The two sorted
+	 * sequences of end points are merged in a single linear pass.
+	 * 
+	 * @param leftSortedIntervals Array list of intervals sorted according to left endpoints
+	 * @param rightSortedIntervals Array list of intervals sorted according to right endpoints
+	 * @return Sorted array of all endpoints without duplicates
+	 */
+	public int[] getSortedEndPoints(ArrayList<Interval> leftSortedIntervals, ArrayList<Interval> rightSortedIntervals) {
+		int nl = leftSortedIntervals.size(), nr = rightSortedIntervals.size();
+		int[] endPoints = new int[nl + nr];
+		int n = 0;
+		int i = 0, j = 0;
+		while (i < nl || j < nr) {
+			int value;
+			if (j == nr || (i < nl &&
+					leftSortedIntervals.get(i).leftEndPoint <= rightSortedIntervals.get(j).rightEndPoint)) {
+				value = leftSortedIntervals.get(i++).leftEndPoint;
+			} else {
+				value = rightSortedIntervals.get(j++).rightEndPoint;
 			}
-			else{
-				sortedEndPoints.add(sortedREndPoints.get(j));
-				j++;
+			if (n == 0 || endPoints[n-1] != value) {
+				endPoints[n++] = value;
 			}
 		}
-		return sortedEndPoints;
+		return Arrays.copyOf(endPoints, n);
 	}
 	
 	/**
-	 * Builds the interval tree structure given a sorted array list of end points
-	 * without duplicates.
+	 * Builds the interval tree structure given a sorted array of end points
+	 * without duplicates. Leaves are paired level by level, left to right; when a level
+	 * has an odd number of nodes, the last one moves up to the end of the next level.
 	 * 
-	 * @param endPoints Sorted array list of end points
-	 * @return Root of the tree structure
+	 * @param endPoints Sorted array of end points
+	 * @return Root of the tree structure, or null if there are no end points
 	 */
-	public static IntervalTreeNode buildTreeNodes(ArrayList<Integer> endPoints) {
-		// COMPLETE THIS METHOD
-		// THE FOLLOWING LINE HAS BEEN ADDED TO MAKE THE PROGRAM COMPILE
-		Queue<IntervalTreeNode> Q=new Queue<IntervalTreeNode>();
-		for(int i=0;i<=endPoints.size()-1;i++){
-			IntervalTreeNode p=new IntervalTreeNode(endPoints.get(i),endPoints.get(i),endPoints.get(i));
-			Q.enqueue(p);
+	public static IntervalTreeNode buildTreeNodes(int[] endPoints) {
+		if (endPoints.length == 0) {
+			return null;
 		}
-		int s=Q.size;
-		while(s>1){
-		s=Q.size;
-		int temp=s;
-		while(temp>1){
-			IntervalTreeNode T1=Q.dequeue();
-			IntervalTreeNode T2=Q.dequeue();
-			float v1=T1.maxSplitValue;
-			float v2=T2.minSplitValue;
-			IntervalTreeNode N=new IntervalTreeNode((v1+v2)/2,T1.minSplitValue,T2.maxSplitValue);
-			N.leftChild=T1;
-			N.rightChild=T2;
-			Q.enqueue(N);
-			temp=temp-2;
-		}
-		if(temp==1){
-			Q.enqueue(Q.dequeue());
+		IntervalTreeNode[] level = new IntervalTreeNode[endPoints.length];
+		for (int i=0; i < endPoints.length; i++) {
+			level[i] = new IntervalTreeNode(endPoints[i], endPoints[i], endPoints[i]);
 		}
+		int size = level.length;
+		while (size > 1) {
+			// the next level is written over the front of this one
+			int next = 0;
+			for (int i=0; i+1 < size; i += 2) {
+				IntervalTreeNode t1 = level[i];
+				IntervalTreeNode t2 = level[i+1];
+				IntervalTreeNode n = new IntervalTreeNode((t1.maxSplitValue + t2.minSplitValue)/2,
+						t1.minSplitValue, t2.maxSplitValue);
+				n.leftChild = t1;
+				n.rightChild = t2;
+				level[next++] = n;
+			}
+			if (size % 2 == 1) {
+				level[next++] = level[size-1];
+			}
+			size = next;
 		}
-		return Q.dequeue();
+		return level[0];
 	}
 	
 	/**
@@ -274,6 +287,23 @@ public class IntervalTree {
 			cur.rightIntervals.add(rightSortedIntervals.get(i));
 			}
 		}
+		
+		countIntervals(root);
+	}
+	
+	/**
+	 * Sets the subtree count of every node in a subtree.
+	 * 
+	 * @param t Root of the subtree
+	 * @return Number of intervals in the subtree
+	 */
+	private static int countIntervals(IntervalTreeNode t) {
+		if (t == null) {
+			return 0;
+		}
+		t.subtreeCount = (t.leftIntervals == null ? 0 : t.leftIntervals.size()) +
+				countIntervals(t.leftChild) + countIntervals(t.rightChild);
+		return t.subtreeCount;
 	}
 	
 	/**
@@ -289,15 +319,313 @@ public class IntervalTree {
 		query(q,root,r);
 		return r;
 	}
-	private void query(Interval q, IntervalTreeNode t, ArrayList<Interval> Result){
-		if(t.leftChild==null&&t.rightChild==null){
-			return;
+	/**
+	 * Counts the intervals in this interval tree that intersect with a given interval,
+	 * without enumerating them. Every interval in a node's subtree lies between the node's
+	 * minimum and maximum split values, so a subtree that the query covers is counted from
+	 * its subtree count; at other nodes, the matches are counted by binary search on the
+	 * sorted lists. Below the node whose split value the query contains, this leaves one path
+	 * on each side, so a count takes O(log^2 n) time however many intervals match.
+	 * 
+	 * @param q The query interval
+	 * @return Number of intersecting intervals
+	 */
+	public int countIntersectingIntervals(Interval q) {
+		return count(q, root);
+	}
+	
+	private static int count(Interval q, IntervalTreeNode t) {
+		int count = 0;
+		while (t != null) {
+			if (q.leftEndPoint <= t.minSplitValue && t.maxSplitValue <= q.rightEndPoint) {
+				return count + t.subtreeCount;
+			}
+			ArrayList<Interval> list;
+			if (q.contains(t.splitValue)) {
+				if (t.leftIntervals != null) {
+					count += t.leftIntervals.size();
+				}
+				count += count(q, t.leftChild);
+				t = t.rightChild;
+			} else if (t.splitValue < q.leftEndPoint) {
+				// matches are the suffix whose right endpoints reach q
+				list = t.rightIntervals;
+				if (list != null) {
+					int lo = 0, hi = list.size();
+					while (lo < hi) {
+						int mid = (lo + hi) >>> 1;
+						if (list.get(mid).rightEndPoint < q.leftEndPoint) {
+							lo = mid+1;
+						} else {
+							hi = mid;
+						}
+					}
+					count += list.size() - lo;
+				}
+				t = t.rightChild;
+			} else {
+				// matches are the prefix whose left endpoints reach q
+				list = t.leftIntervals;
+				if (list != null) {
+					int lo = 0, hi = list.size();
+					while (lo < hi) {
+						int mid = (lo + hi) >>> 1;
+						if (list.get(mid).leftEndPoint <= q.rightEndPoint) {
+							lo = mid+1;
+						} else {
+							hi = mid;
+						}
+					}
+					count += lo;
+				}
+				t = t.leftChild;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Gets at most a given number of the intervals in this interval tree that intersect with
+	 * a given interval. The search stops as soon as that many have been found.
+	 * 
+	 * @param q The query interval for which intersections are to be found
+	 * @param limit Largest number of intervals to return
+	 * @return Array list of up to limit intersecting intervals, in no particular order; size
+	 *         is less than limit only if there are no more intersections
+	 */
+	public ArrayList<Interval> findIntersectingIntervals(Interval q, int limit) {
+		ArrayList<Interval> result = new ArrayList<Interval>(Math.max(0, Math.min(limit, 16)));
+		if (limit > 0) {
+			query(q, root, result, limit);
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds intersecting intervals of a subtree until the result has limit intervals.
+	 * 
+	 * @return True if the result is full
+	 */
+	private static boolean query(Interval q, IntervalTreeNode t, ArrayList<Interval> result, int limit) {
+		while (t != null) {
+			if (q.contains(t.splitValue)) {
+				ArrayList<Interval> list = t.leftIntervals;
+				if (list != null) {
+					for (int i=0; i < list.size(); i++) {
+						result.add(list.get(i));
+						if (result.size() == limit) {
+							return true;
+						}
+					}
+				}
+				if (query(q, t.leftChild, result, limit)) {
+					return true;
+				}
+				t = t.rightChild;
+			} else if (t.splitValue < q.leftEndPoint) {
+				ArrayList<Interval> list = t.rightIntervals;
+				if (list != null) {
+					for (int i=list.size()-1; i >= 0 && list.get(i).rightEndPoint >= q.leftEndPoint; i--) {
+						result.add(list.get(i));
+						if (result.size() == limit) {
+							return true;
+						}
+					}
+				}
+				t = t.rightChild;
+			} else {
+				ArrayList<Interval> list = t.leftIntervals;
+				if (list != null) {
+					for (int i=0; i < list.size() && list.get(i).leftEndPoint <= q.rightEndPoint; i++) {
+						result.add(list.get(i));
+						if (result.size() == limit) {
+							return true;
+						}
+					}
+				}
+				t = t.leftChild;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the intervals in this interval tree that intersect with each of a batch of
+	 * intervals. The result is the same as calling findIntersectingIntervals on each query,
+	 * but the queries are sorted on left endpoint and walked down the tree together, so each
+	 * node is visited once for all the queries that reach it, rather than once per query.
+	 * Large batches are split into runs of neighbouring queries that are answered in
+	 * parallel.
+	 * 
+	 * @param queries The query intervals
+	 * @return Array list with, for each query in the same position, the array list of its
+	 *         intersecting intervals
+	 */
+	public ArrayList<ArrayList<Interval>> findIntersectingIntervals(ArrayList<Interval> queries) {
+		int n = queries.size();
+		long[] keys = new long[n];
+		for (int i=0; i < n; i++) {
+			keys[i] = key(queries.get(i).leftEndPoint, i);
+		}
+		sortKeys(keys);
+		int[] order = new int[n];
+		for (int i=0; i < n; i++) {
+			order[i] = (int)keys[i];
 		}
-		if(t.leftIntervals==null||t.rightIntervals==null){
+		ArrayList<ArrayList<Interval>> results = new ArrayList<ArrayList<Interval>>(n);
+		for (int i=0; i < n; i++) {
+			results.add(new ArrayList<Interval>());
+		}
+		Interval[] q = queries.toArray(new Interval[n]);
+		if (n < PARALLEL_QUERY_MIN) {
+			queryBatch(root, q, order, n, results);
+		} else {
+			ForkJoinPool.commonPool().invoke(new BatchQuery(root, q, order, 0, n, results));
+		}
+		return results;
+	}
+	
+	/**
+	 * Answers a run of queries in parallel, by halving it until each part is small enough
+	 * to be walked down the tree by one thread.
+	 */
+	static class BatchQuery extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Root of the tree
+		 */
+		IntervalTreeNode root;
+		
+		/**
+		 * All queries, in input order
+		 */
+		Interval[] queries;
+		
+		/**
+		 * Positions of the queries, sorted on left endpoint
+		 */
+		int[] order;
+		
+		/**
+		 * Range of order answered by this task
+		 */
+		int from, to;
+		
+		/**
+		 * Result list of each query, in input order
+		 */
+		ArrayList<ArrayList<Interval>> results;
+		
+		BatchQuery(IntervalTreeNode root, Interval[] queries, int[] order, int from, int to,
+				ArrayList<ArrayList<Interval>> results) {
+			this.root = root;
+			this.queries = queries;
+			this.order = order;
+			this.from = from;
+			this.to = to;
+			this.results = results;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if (to - from < PARALLEL_QUERY_MIN) {
+				queryBatch(root, queries, Arrays.copyOfRange(order, from, to), to - from, results);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new BatchQuery(root, queries, order, from, mid, results),
+					new BatchQuery(root, queries, order, mid, to, results));
+		}
+	}
+	
+	/**
+	 * Walks a set of queries down from a node together. The queries that go on to the left
+	 * child are those whose left endpoint is left of the split value; since the set is
+	 * sorted on left endpoint, they are a prefix of it, and are passed on in place. Those
+	 * that go on to the right child, whose right endpoint is right of the split value, are
+	 * copied out in the same order.
+	 * 
+	 * @param t Node
+	 * @param queries All queries, in input order
+	 * @param set Positions of the queries that reach t, sorted on left endpoint; only the
+	 *        first size are used
+	 * @param size Number of queries that reach t
+	 * @param results Result list of each query, in input order
+	 */
+	static void queryBatch(IntervalTreeNode t, Interval[] queries, int[] set, int size,
+			ArrayList<ArrayList<Interval>> results) {
+		while (t != null && size > 0) {
+			int left = 0, right = 0;
+			int[] rightSet = null;
+			for (int k=0; k < size; k++) {
+				Interval q = queries[set[k]];
+				ArrayList<Interval> result = results.get(set[k]);
+				if (q.contains(t.splitValue)) {
+					if (t.leftIntervals != null) {
+						result.addAll(t.leftIntervals);
+					}
+				} else if (t.splitValue < q.leftEndPoint) {
+					t.matchRight(q, result);
+				} else {
+					t.matchLeft(q, result);
+				}
+				if (q.leftEndPoint < t.splitValue) {
+					left = k+1;
+				}
+				if (q.rightEndPoint > t.splitValue) {
+					if (rightSet == null) {
+						rightSet = new int[size-k];
+					}
+					rightSet[right++] = set[k];
+				}
+			}
+			// the right subtree gets its own copy, so the left one can be walked in place
+			if (right > 0) {
+				queryBatch(t.rightChild, queries, rightSet, right, results);
+			}
+			t = t.leftChild;
+			size = left;
+		}
+	}
+	
+	/**
+	 * Gets all intervals in this interval tree that contain a given point, and passes each
+	 * one to a visitor. Only one path from the root down is walked, guided by the split
+	 * values, and nothing is allocated.
+	 * 
+	 * @param point The point for which containing intervals are to be found
+	 * @param visitor Visitor that is given each containing interval
+	 * @return Number of containing intervals
+	 */
+	public int stab(int point, IntervalVisitor visitor) {
+		return IntervalWalk.stab(root, point, visitor, null);
+	}
+	
+	/**
+	 * Gets all intervals in this interval tree that contain a given point, and adds them to
+	 * a list created by the caller. The list is not cleared first; a list that is cleared and
+	 * reused between queries is only grown, so a query usually allocates nothing.
+	 * 
+	 * @param point The point for which containing intervals are to be found
+	 * @param result Array list to which the containing intervals are added
+	 * @return Number of containing intervals
+	 */
+	public int stab(int point, ArrayList<Interval> result) {
+		return IntervalWalk.stab(root, point, null, result);
+	}
+	
+	private void query(Interval q, IntervalTreeNode t, ArrayList<Interval> Result){
+		if(t==null){
 			return;
 		}
 		if(q.contains(t.splitValue)){
-			Result.addAll(t.leftIntervals);
+			if(t.leftIntervals!=null){
+				Result.addAll(t.leftIntervals);
+			}
 			query(q,t.leftChild,Result);
 			query(q,t.rightChild,Result);
 		}
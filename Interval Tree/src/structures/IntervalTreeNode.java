@@ -38,6 +38,11 @@ public	float splitValue;
 	 */
 	ArrayList<Interval> rightIntervals;
 	
+	/**
+	 * Number of intervals at this node and at all nodes in its subtree
+	 */
+	int subtreeCount;
+	
 	/**
 	 * Reference to left child of this node
 	 */
@@ -65,6 +70,7 @@ public	float splitValue;
 		this.minSplitValue = minSplitValue;
 		leftIntervals = null;
 		rightIntervals = null;
+		subtreeCount = 0;
 		leftChild = null;
 		rightChild = null;
 	}
@@ -0,0 +1,17 @@
+package structures;
+
+/**
+ * Receives the intervals found by a query on an interval tree, one at a time, so that the
+ * query does not have to collect them in a list.
+ * 
+ * @author runb-cs112
+ */
+public interface IntervalVisitor {
+	
+	/**
+	 * Called once for each interval found.
+	 * 
+	 * @param interval Interval found by the query
+	 */
+	void visit(Interval interval);
+}
@@ -0,0 +1,203 @@
+package structures;
+
+import java.util.ArrayList;
+
+/**
+ * The query walks shared by the interval trees of this package. The walks over a flat
+ * tree, whose nodes are numbered in breadth-first order and whose intervals are held in
+ * arrays (see FlatIntervalTree), are written once here against the abstract accessors,
+ * which FlatIntervalTree implements over Java arrays and IntervalIndex over a mapped file.
+ * The point-stabbing walk over the linked nodes of an IntervalTree is here as well.
+ *
+ * Each node's intervals are a range of the interval numbers, sorted on left endpoint; the
+ * same range of rightOrder gives them sorted on right endpoint.
+ *
+ * @author runb-cs112
+ */
+abstract class IntervalWalk {
+
+	/**
+	 * Returns the number of nodes.
+	 */
+	abstract int numNodes();
+
+	/**
+	 * Returns the split value of a node.
+	 */
+	abstract float splitValue(int node);
+
+	/**
+	 * Returns the number of the left child of a node, whose right child is the next
+	 * number, or -1 for a leaf.
+	 */
+	abstract int leftChild(int node);
+
+	/**
+	 * Returns the number of the first interval of a node; offset(numNodes()) is the
+	 * number of intervals.
+	 */
+	abstract int offset(int node);
+
+	/**
+	 * Returns the left endpoint of an interval.
+	 */
+	abstract int leftEndPoint(int k);
+
+	/**
+	 * Returns the number of the interval at a position of the right sorted order.
+	 */
+	abstract int rightOrder(int k);
+
+	/**
+	 * Returns the right endpoint of the interval at a position of the right sorted order.
+	 */
+	abstract int rightOrderEndPoint(int k);
+
+	/**
+	 * Returns an interval, to be reported by a query.
+	 */
+	abstract Interval interval(int k);
+
+	/**
+	 * Adds the intervals that intersect with q to a list.
+	 *
+	 * @param q Query interval
+	 * @param result Array list to which the intersecting intervals are added
+	 */
+	void query(Interval q, ArrayList<Interval> result) {
+		if (numNodes() > 0) {
+			query(0, q, result);
+		}
+	}
+
+	/**
+	 * Adds the intervals in the subtree of a node that intersect with q. The path to the
+	 * right is followed in a loop, and only branches to the left recurse.
+	 */
+	private void query(int i, Interval q, ArrayList<Interval> result) {
+		while (i >= 0) {
+			float split = splitValue(i);
+			int child = leftChild(i);
+			int from = offset(i), to = offset(i+1);
+			if (q.contains(split)) {
+				for (int k=from; k < to; k++) {
+					result.add(interval(k));
+				}
+				if (child < 0) {
+					return;
+				}
+				query(child, q, result);
+				i = child+1;
+			} else if (split < q.leftEndPoint) {
+				for (int k=to-1; k >= from && rightOrderEndPoint(k) >= q.leftEndPoint; k--) {
+					result.add(interval(rightOrder(k)));
+				}
+				i = child < 0 ? -1 : child+1;
+			} else {
+				for (int k=from; k < to && leftEndPoint(k) <= q.rightEndPoint; k++) {
+					result.add(interval(k));
+				}
+				i = child;
+			}
+		}
+	}
+
+	/**
+	 * Walks down one path toward a point, as the walk over linked nodes below does, and
+	 * reports every interval that contains it.
+	 *
+	 * @param point The point for which containing intervals are to be found
+	 * @param visitor Visitor that is given each containing interval, or null
+	 * @param result Array list to which the containing intervals are added if visitor is null
+	 * @return Number of containing intervals
+	 */
+	int stab(int point, IntervalVisitor visitor, ArrayList<Interval> result) {
+		int count = 0;
+		int i = numNodes() > 0 ? 0 : -1;
+		while (i >= 0) {
+			float split = splitValue(i);
+			int from = offset(i), to = offset(i+1);
+			if (point < split) {
+				for (int k=from; k < to && leftEndPoint(k) <= point; k++) {
+					report(interval(k), visitor, result);
+					count++;
+				}
+				i = leftChild(i);
+			} else if (point > split) {
+				for (int k=to-1; k >= from && rightOrderEndPoint(k) >= point; k--) {
+					report(interval(rightOrder(k)), visitor, result);
+					count++;
+				}
+				i = leftChild(i) < 0 ? -1 : leftChild(i)+1;
+			} else {
+				for (int k=from; k < to; k++) {
+					report(interval(k), visitor, result);
+					count++;
+				}
+				break;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Walks down from the root of a linked tree toward a point. Every interval at a node
+	 * contains the node's split value, so at a node whose split value is right of the point,
+	 * the intervals that contain the point are a prefix of the left sorted list, and at a
+	 * node whose split value is left of the point, a suffix of the right sorted list. At a
+	 * node whose split value is the point, all its intervals contain the point, and no
+	 * interval below it does.
+	 *
+	 * @param t Root of the tree
+	 * @param point The point for which containing intervals are to be found
+	 * @param visitor Visitor that is given each containing interval, or null
+	 * @param result Array list to which the containing intervals are added if visitor is null
+	 * @return Number of containing intervals
+	 */
+	static int stab(IntervalTreeNode t, int point, IntervalVisitor visitor,
+			ArrayList<Interval> result) {
+		int count = 0;
+		while (t != null) {
+			if (point < t.splitValue) {
+				ArrayList<Interval> list = t.leftIntervals;
+				if (list != null) {
+					for (int i=0; i < list.size() && list.get(i).leftEndPoint <= point; i++) {
+						report(list.get(i), visitor, result);
+						count++;
+					}
+				}
+				t = t.leftChild;
+			} else if (point > t.splitValue) {
+				ArrayList<Interval> list = t.rightIntervals;
+				if (list != null) {
+					for (int i=list.size()-1; i >= 0 && list.get(i).rightEndPoint >= point; i--) {
+						report(list.get(i), visitor, result);
+						count++;
+					}
+				}
+				t = t.rightChild;
+			} else {
+				ArrayList<Interval> list = t.leftIntervals;
+				if (list != null) {
+					for (int i=0; i < list.size(); i++) {
+						report(list.get(i), visitor, result);
+						count++;
+					}
+				}
+				break;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Passes an interval to the visitor, or adds it to the list if there is no visitor.
+	 */
+	static void report(Interval iv, IntervalVisitor visitor, ArrayList<Interval> result) {
+		if (visitor != null) {
+			visitor.visit(iv);
+		} else {
+			result.add(iv);
+		}
+	}
+}